@@ -0,0 +1,148 @@
+package uk.co.huntersix.spring.rest.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A keep-alive HTTP/1.1 connection speaking just enough of the protocol for the load drivers. It reads each response
+ * whole and opens a new connection when the server closed the last one, e.g. after Tomcat's 100 requests per
+ * connection, so that does not fail the next request.
+ */
+final class HttpConnection implements Closeable {
+    private final String host;
+    private final int port;
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private final byte[] buffer = new byte[8192];
+    private Socket socket;
+    private OutputStream out;
+    private InputStream in;
+
+    HttpConnection(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Sends a request, e.g. from {@link #request(String, String, String)}, and reads its response.
+     *
+     * @param keepBody whether to keep the response body for {@link #body()}, instead of discarding it
+     * @return the response status
+     */
+    int exchange(byte[] request, boolean keepBody) throws IOException {
+        if (socket == null)
+            connect();
+        try {
+            out.write(request);
+            out.flush();
+            return readResponse(keepBody);
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return the body of the last response read with keepBody
+     */
+    String body() {
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    byte[] request(String method, String path, String json) {
+        StringBuilder request = new StringBuilder(128)
+                .append(method).append(' ').append(path).append(" HTTP/1.1\r\nHost: ").append(host).append(':')
+                .append(port).append("\r\nAccept: application/json\r\n");
+        if (json == null)
+            return request.append("\r\n").toString().getBytes(StandardCharsets.UTF_8);
+        byte[] content = json.getBytes(StandardCharsets.UTF_8);
+        byte[] head = request.append("Content-Type: application/json\r\nContent-Length: ").append(content.length)
+                .append("\r\n\r\n").toString().getBytes(StandardCharsets.UTF_8);
+        byte[] whole = new byte[head.length + content.length];
+        System.arraycopy(head, 0, whole, 0, head.length);
+        System.arraycopy(content, 0, whole, head.length, content.length);
+        return whole;
+    }
+
+    @Override
+    public void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // nothing left to read from it
+            }
+            socket = null;
+        }
+    }
+
+    private void connect() throws IOException {
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(host, port));
+        out = socket.getOutputStream();
+        in = new BufferedInputStream(socket.getInputStream());
+    }
+
+    private int readResponse(boolean keepBody) throws IOException {
+        body.reset();
+        String statusLine = readLine();
+        int status = Integer.parseInt(statusLine.substring(9, 12));
+        long length = 0;
+        boolean chunked = false;
+        boolean closing = false;
+        String header;
+        while (!(header = readLine()).isEmpty()) {
+            String name = header.substring(0, header.indexOf(':')).trim();
+            String value = header.substring(header.indexOf(':') + 1).trim();
+            if (name.equalsIgnoreCase("Content-Length"))
+                length = Long.parseLong(value);
+            else if (name.equalsIgnoreCase("Transfer-Encoding") && value.equalsIgnoreCase("chunked"))
+                chunked = true;
+            else if (name.equalsIgnoreCase("Connection") && value.equalsIgnoreCase("close"))
+                closing = true;
+        }
+        if (!chunked) {
+            read(length, keepBody);
+        } else {
+            long chunk;
+            while ((chunk = Long.parseLong(readLine().trim(), 16)) > 0) {
+                read(chunk, keepBody);
+                read(2, false);
+            }
+            readLine();
+        }
+        if (closing)
+            close();
+        return status;
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0)
+                throw new IOException("Connection closed");
+            if (c != '\r')
+                line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    private void read(long length, boolean keep) throws IOException {
+        for (long left = length; left > 0; ) {
+            int read = in.read(buffer, 0, (int) Math.min(left, buffer.length));
+            if (read < 0)
+                throw new IOException("Connection closed");
+            if (keep)
+                body.write(buffer, 0, read);
+            left -= read;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package uk.co.huntersix.spring.rest.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop HTTP load against a running instance: every connection is kept alive and sends its next request as
+ * soon as the previous response has arrived, so the number of connections is the number of requests in flight.
+ * <p>
+ * {@code java -cp target/benchmarks.jar uk.co.huntersix.spring.rest.benchmark.HttpLoad http://localhost:8080 post 1000 20}
+ * runs 1000 connections for 20 seconds after a 5 second warm-up. {@code get} reads /person/smith/mary and
+ * {@code post} adds a new person per request.
+ */
+public final class HttpLoad {
+    private static final int WARMUP_SECONDS = 5;
+    //Keeps the names posted by one run apart from those of earlier runs against the same instance
+    private static final String RUN = Long.toString(System.currentTimeMillis(), 36);
+
+    private HttpLoad() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        URI base = URI.create(args[0]);
+        String mode = args[1];
+        int connections = Integer.parseInt(args[2]);
+        int seconds = Integer.parseInt(args[3]);
+
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+        AtomicLong errors = new AtomicLong();
+        Connection[] workers = new Connection[connections];
+        CountDownLatch done = new CountDownLatch(connections);
+        for (int i = 0; i < connections; i++) {
+            workers[i] = new Connection(base, mode, i, measureFrom, end, errors, done);
+            Thread thread = new Thread(workers[i], "load-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+
+        int total = 0;
+        for (Connection worker : workers) {
+            total += worker.count;
+        }
+        long[] latencies = new long[total];
+        int offset = 0;
+        for (Connection worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+            offset += worker.count;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%s connections=%d requests=%d throughput=%.0f/s p50=%.2fms p99=%.2fms max=%.2fms errors=%d%n",
+                mode, connections, total, total / (double) seconds, millis(latencies, 0.5), millis(latencies, 0.99),
+                millis(latencies, 1.0), errors.get());
+    }
+
+    private static double millis(long[] sorted, double quantile) {
+        if (sorted.length == 0)
+            return 0;
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+
+    private static final class Connection implements Runnable {
+        private final URI base;
+        private final String mode;
+        private final int number;
+        private final long measureFrom;
+        private final long end;
+        private final AtomicLong errors;
+        private final CountDownLatch done;
+        private long[] latencies = new long[256];
+        private int count;
+        private long sequence;
+
+        Connection(URI base, String mode, int number, long measureFrom, long end, AtomicLong errors,
+                   CountDownLatch done) {
+            this.base = base;
+            this.mode = mode;
+            this.number = number;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            this.errors = errors;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            try (HttpConnection connection = new HttpConnection(base.getHost(), base.getPort())) {
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    try {
+                        int status = connection.exchange(request(connection), false);
+                        long finished = System.nanoTime();
+                        if (status >= 400)
+                            errors.incrementAndGet();
+                        else if (now >= measureFrom)
+                            record(finished - now);
+                    } catch (IOException ex) {
+                        errors.incrementAndGet();
+                    }
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private void record(long latency) {
+            if (count == latencies.length)
+                latencies = Arrays.copyOf(latencies, count * 2);
+            latencies[count++] = latency;
+        }
+
+        private byte[] request(HttpConnection connection) {
+            if ("post".equals(mode)) {
+                return connection.request("POST", "/person",
+                        "{\"firstName\":\"Load" + RUN + "-" + number + "-" + sequence++ + "\",\"lastName\":\"Load\"}");
+            }
+            return connection.request("GET", "/person/smith/mary", null);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package uk.co.huntersix.spring.rest.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.co.huntersix.spring.rest.model.BlockIdGenerator;
+import uk.co.huntersix.spring.rest.model.IdGenerator;
+import uk.co.huntersix.spring.rest.model.SequenceIdGenerator;
+import uk.co.huntersix.spring.rest.model.SnowflakeIdGenerator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * New ids per microsecond from each person.id.generator, taken by every benchmark thread at once. The shared counter
+ * of the sequence generator is what the other two spread out; run with -t set to the number of cores to see it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class IdGeneratorBenchmark {
+
+    @Param({"sequence", "block", "snowflake"})
+    private String generator;
+
+    private IdGenerator ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (generator) {
+            case "block":
+                ids = new BlockIdGenerator(1000);
+                break;
+            case "snowflake":
+                ids = new SnowflakeIdGenerator(0);
+                break;
+            default:
+                ids = new SequenceIdGenerator();
+        }
+    }
+
+    @Benchmark
+    public long nextId() {
+        return ids.nextId();
+    }
+}
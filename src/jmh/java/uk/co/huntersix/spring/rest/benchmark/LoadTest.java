@@ -0,0 +1,409 @@
+package uk.co.huntersix.spring.rest.benchmark;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * End-to-end load test of the person endpoints with a mix of operations, reporting throughput, error rates and HDR
+ * histogram latency percentiles per operation, and failing when they miss the given objectives.
+ * <p>
+ * Without --url it starts the application in a new JVM, loaded with --people generated people, and stops it after.
+ * Person i is named First{i} Last{i % (people / 10)} and has id i + 1; --data-out writes that dataset, to start a
+ * server for --url with, and exits.
+ * <p>
+ * {@code java -cp target/benchmarks.jar uk.co.huntersix.spring.rest.benchmark.LoadTest --people=100000
+ * --connections=32 --duration=30 --mix=get:80,list:10,post:5,patch:5 --keys=zipf --max-p99-ms=50}
+ * <ul>
+ * <li>--mix weighs the operations: get (one person by name), list (a surname), post (a new person), patch (a seeded
+ * person's firstName, to the same name so reads keep finding it) and delete (a person this run posted, or a post when
+ * there is none yet)</li>
+ * <li>--keys picks the people read and patched: uniform, or zipf with --zipf-exponent, the lowest ids hottest</li>
+ * <li>--rate sends that many requests per second in total, timing each from when it was due rather than sent so a
+ * stalled server is not hidden; 0, the default, sends each connection's next request as soon as it is answered</li>
+ * <li>--max-p50-ms, --max-p99-ms, --max-p999-ms, --max-error-rate (a fraction) and --min-throughput (requests per
+ * second, counting successful ones) are checked across all operations; any missed exits with status 1</li>
+ * <li>--histogram-out writes each operation's full percentile distribution to that directory</li>
+ * <li>arguments after -- are passed to the application started without --url</li>
+ * </ul>
+ */
+public final class LoadTest {
+    private static final String[] OPERATIONS = {"get", "list", "post", "patch", "delete"};
+    private static final int GET = 0;
+    private static final int LIST = 1;
+    private static final int POST = 2;
+    private static final int PATCH = 3;
+    private static final int DELETE = 4;
+    //Latencies are recorded in microseconds, up to a minute
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+    //Keeps the names posted by one run apart from those of earlier runs against the same instance
+    private static final String RUN = Long.toString(System.currentTimeMillis(), 36);
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> appArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--")) {
+                appArgs.addAll(Arrays.asList(args).subList(i + 1, args.length));
+                break;
+            }
+            if (!args[i].startsWith("--") || args[i].indexOf('=') < 0)
+                throw new IllegalArgumentException("Expected --name=value, got " + args[i]);
+            options.put(args[i].substring(2, args[i].indexOf('=')), args[i].substring(args[i].indexOf('=') + 1));
+        }
+        int people = Integer.parseInt(options.getOrDefault("people", "100000"));
+        if (options.containsKey("data-out")) {
+            writePeople(Paths.get(options.get("data-out")), people);
+            return;
+        }
+        System.exit(run(options, people, appArgs, System.out) ? 0 : 1);
+    }
+
+    private static boolean run(Map<String, String> options, int people, List<String> appArgs, PrintStream report)
+            throws Exception {
+        if (options.containsKey("url"))
+            return drive(URI.create(options.get("url")), options, people, report);
+        Path work = Files.createTempDirectory("load");
+        Path data = work.resolve("people.csv");
+        writePeople(data, people);
+        List<String> args = new ArrayList<>();
+        args.add("--person.data.location=file:" + data);
+        args.addAll(appArgs);
+        File log = work.resolve("application.log").toFile();
+        try (LocalApplication app = LocalApplication.start(Collections.emptyList(), args, log)) {
+            long listening = app.awaitListening();
+            report.printf("Started the application with %d people in %d ms, log in %s%n", people,
+                    TimeUnit.NANOSECONDS.toMillis(listening), log);
+            return drive(URI.create("http://localhost:" + app.port()), options, people, report);
+        }
+    }
+
+    private static boolean drive(URI base, Map<String, String> options, int people, PrintStream report)
+            throws Exception {
+        int connections = Integer.parseInt(options.getOrDefault("connections", "32"));
+        int seconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        int[] mix = mix(options.getOrDefault("mix", "get:80,list:10,post:5,patch:5"));
+        Keys keys = Keys.of(options.getOrDefault("keys", "uniform"), people,
+                Double.parseDouble(options.getOrDefault("zipf-exponent", "1.0")));
+
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+        long interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * connections / rate) : 0;
+        Connection[] workers = new Connection[connections];
+        CountDownLatch done = new CountDownLatch(connections);
+        for (int i = 0; i < connections; i++) {
+            workers[i] = new Connection(base, i, people, mix, keys, new SplittableRandom(seed + i),
+                    start + interval * i / connections, interval, measureFrom, end, done);
+            Thread thread = new Thread(workers[i], "load-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        report.printf("%s: %d connections, %s, %s keys, %d s warm-up, %d s measured%n", base, connections,
+                rate > 0 ? String.format("%.0f requests/s", rate) : "closed loop", options.getOrDefault("keys",
+                        "uniform"), warmup, seconds);
+        done.await();
+
+        Histogram[] latencies = new Histogram[OPERATIONS.length];
+        long[] errors = new long[OPERATIONS.length];
+        Map<String, Long> errorsByCause = new TreeMap<>();
+        for (int op = 0; op < OPERATIONS.length; op++)
+            latencies[op] = new Histogram(HIGHEST_MICROS, 3);
+        for (Connection worker : workers) {
+            for (int op = 0; op < OPERATIONS.length; op++) {
+                latencies[op].add(worker.latencies[op]);
+                errors[op] += worker.errors[op];
+            }
+            worker.errorsByCause.forEach((cause, count) -> errorsByCause.merge(cause, count, Long::sum));
+        }
+        Histogram all = new Histogram(HIGHEST_MICROS, 3);
+        long allErrors = 0;
+        report.printf("%-9s %10s %10s %8s %8s %9s %9s %9s %9s%n", "operation", "requests", "req/s", "errors",
+                "error%", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            if (latencies[op].getTotalCount() + errors[op] == 0)
+                continue;
+            line(report, OPERATIONS[op], latencies[op], errors[op], seconds);
+            all.add(latencies[op]);
+            allErrors += errors[op];
+        }
+        line(report, "all", all, allErrors, seconds);
+        if (!errorsByCause.isEmpty())
+            report.println("errors by cause: " + errorsByCause);
+        if (options.containsKey("histogram-out"))
+            writeHistograms(Paths.get(options.get("histogram-out")), latencies, all);
+        return check(report, options, all, allErrors, seconds);
+    }
+
+    private static void line(PrintStream report, String operation, Histogram latencies, long errors, int seconds) {
+        long requests = latencies.getTotalCount() + errors;
+        report.printf("%-9s %10d %10.0f %8d %7.3f%% %9.2f %9.2f %9.2f %9.2f%n", operation, requests,
+                requests / (double) seconds, errors, requests == 0 ? 0 : 100.0 * errors / requests,
+                millis(latencies, 50), millis(latencies, 99), millis(latencies, 99.9),
+                latencies.getMaxValue() / 1000.0);
+    }
+
+    //Checks the objectives given against all operations together
+    private static boolean check(PrintStream report, Map<String, String> options, Histogram all, long errors,
+                                 int seconds) {
+        long requests = all.getTotalCount() + errors;
+        boolean met = true;
+        met &= atMost(report, options, "max-p50-ms", "p50", millis(all, 50), "ms");
+        met &= atMost(report, options, "max-p99-ms", "p99", millis(all, 99), "ms");
+        met &= atMost(report, options, "max-p999-ms", "p99.9", millis(all, 99.9), "ms");
+        met &= atMost(report, options, "max-error-rate", "error rate", requests == 0 ? 0 : errors / (double) requests,
+                "");
+        if (options.containsKey("min-throughput")) {
+            double limit = Double.parseDouble(options.get("min-throughput"));
+            double throughput = all.getTotalCount() / (double) seconds;
+            met &= objective(report, "throughput", throughput, ">=", limit, "/s", throughput >= limit);
+        }
+        return met;
+    }
+
+    private static boolean atMost(PrintStream report, Map<String, String> options, String option, String name,
+                                  double value, String unit) {
+        if (!options.containsKey(option))
+            return true;
+        double limit = Double.parseDouble(options.get(option));
+        return objective(report, name, value, "<=", limit, unit, value <= limit);
+    }
+
+    private static boolean objective(PrintStream report, String name, double value, String comparison, double limit,
+                                     String unit, boolean met) {
+        report.printf("objective %s %s %s%s: %s%s %s%n", name, comparison, limit, unit, String.format("%.4f", value),
+                unit, met ? "met" : "MISSED");
+        return met;
+    }
+
+    private static double millis(Histogram latencies, double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static void writeHistograms(Path directory, Histogram[] latencies, Histogram all) throws IOException {
+        Files.createDirectories(directory);
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            if (latencies[op].getTotalCount() > 0)
+                writeHistogram(directory.resolve(OPERATIONS[op] + ".hgrm"), latencies[op]);
+        }
+        writeHistogram(directory.resolve("all.hgrm"), all);
+    }
+
+    //The percentile distribution HdrHistogram's plotter reads, in milliseconds
+    private static void writeHistogram(Path file, Histogram latencies) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, "UTF-8")) {
+            latencies.outputPercentileDistribution(out, 1000.0);
+        }
+    }
+
+    private static int[] mix(String spec) {
+        int[] weights = new int[OPERATIONS.length];
+        for (String part : spec.split(",")) {
+            String[] weight = part.trim().split(":");
+            int op = Arrays.asList(OPERATIONS).indexOf(weight[0]);
+            if (op < 0 || weight.length != 2)
+                throw new IllegalArgumentException("Expected operation:weight with an operation of "
+                        + Arrays.toString(OPERATIONS) + ", got " + part);
+            weights[op] = Integer.parseInt(weight[1]);
+        }
+        int[] cumulative = new int[weights.length];
+        int total = 0;
+        for (int op = 0; op < weights.length; op++)
+            cumulative[op] = total += weights[op];
+        if (total <= 0)
+            throw new IllegalArgumentException("The mix has no weight: " + spec);
+        return cumulative;
+    }
+
+    private static void writePeople(Path file, int people) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("id,firstName,lastName\n");
+            for (int i = 0; i < people; i++) {
+                out.write((i + 1) + "," + People.firstName(i) + "," + People.lastName(i, people) + "\n");
+            }
+        }
+    }
+
+    /**
+     * Picks which of the seeded people a request is about.
+     */
+    private abstract static class Keys {
+        abstract int next(SplittableRandom random);
+
+        static Keys of(String distribution, int people, double exponent) {
+            switch (distribution) {
+                case "uniform":
+                    return new Keys() {
+                        @Override
+                        int next(SplittableRandom random) {
+                            return random.nextInt(people);
+                        }
+                    };
+                case "zipf":
+                    return new Zipf(people, exponent);
+                default:
+                    throw new IllegalArgumentException("Unknown key distribution: " + distribution);
+            }
+        }
+    }
+
+    //Person i is picked with probability proportional to 1 / (i + 1)^exponent, by binary search of the cumulative sum
+    private static final class Zipf extends Keys {
+        private final double[] cumulative;
+
+        Zipf(int people, double exponent) {
+            cumulative = new double[people];
+            double sum = 0;
+            for (int i = 0; i < people; i++)
+                cumulative[i] = sum += 1 / Math.pow(i + 1, exponent);
+            for (int i = 0; i < people; i++)
+                cumulative[i] /= sum;
+        }
+
+        @Override
+        int next(SplittableRandom random) {
+            int key = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(key >= 0 ? key : -key - 1, cumulative.length - 1);
+        }
+    }
+
+    private static final class Connection implements Runnable {
+        private final URI base;
+        private final int number;
+        private final int people;
+        private final int[] mix;
+        private final Keys keys;
+        private final SplittableRandom random;
+        private final long firstDue;
+        private final long interval;
+        private final long measureFrom;
+        private final long end;
+        private final CountDownLatch done;
+        private final Histogram[] latencies = new Histogram[OPERATIONS.length];
+        private final long[] errors = new long[OPERATIONS.length];
+        private final Map<String, Long> errorsByCause = new TreeMap<>();
+        //Ids of the people this connection posted, for deletes
+        private final Deque<Long> posted = new ArrayDeque<>();
+        private long sequence;
+
+        Connection(URI base, int number, int people, int[] mix, Keys keys, SplittableRandom random, long firstDue,
+                   long interval, long measureFrom, long end, CountDownLatch done) {
+            this.base = base;
+            this.number = number;
+            this.people = people;
+            this.mix = mix;
+            this.keys = keys;
+            this.random = random;
+            this.firstDue = firstDue;
+            this.interval = interval;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            this.done = done;
+            for (int op = 0; op < OPERATIONS.length; op++)
+                latencies[op] = new Histogram(HIGHEST_MICROS, 3);
+        }
+
+        @Override
+        public void run() {
+            try (HttpConnection connection = new HttpConnection(base.getHost(), base.getPort())) {
+                long due = firstDue;
+                while (true) {
+                    long now = System.nanoTime();
+                    if (interval > 0) {
+                        if (due > now) {
+                            LockSupport.parkNanos(due - now);
+                            now = System.nanoTime();
+                        }
+                    } else {
+                        due = now;
+                    }
+                    if (now >= end)
+                        return;
+                    int op = operation();
+                    String failure;
+                    try {
+                        int status = send(connection, op);
+                        failure = status >= 400 ? Integer.toString(status) : null;
+                    } catch (IOException ex) {
+                        failure = ex.getClass().getSimpleName();
+                    }
+                    if (due >= measureFrom) {
+                        if (failure != null) {
+                            errors[op]++;
+                            errorsByCause.merge(failure, 1L, Long::sum);
+                        } else {
+                            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due);
+                            latencies[op].recordValue(Math.min(micros, HIGHEST_MICROS));
+                        }
+                    }
+                    due += interval;
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private int operation() {
+            int pick = random.nextInt(mix[mix.length - 1]);
+            int op = 0;
+            while (pick >= mix[op])
+                op++;
+            return op == DELETE && posted.isEmpty() ? POST : op;
+        }
+
+        private int send(HttpConnection connection, int op) throws IOException {
+            int key = keys.next(random);
+            switch (op) {
+                case GET:
+                    return connection.exchange(connection.request("GET",
+                            "/person/" + People.lastName(key, people) + "/" + People.firstName(key), null), false);
+                case LIST:
+                    return connection.exchange(connection.request("GET",
+                            "/person/" + People.lastName(key, people), null), false);
+                case PATCH:
+                    return connection.exchange(connection.request("PATCH", "/person/" + (key + 1),
+                            "{\"firstName\":\"" + People.firstName(key) + "\"}"), false);
+                case DELETE:
+                    return connection.exchange(connection.request("DELETE", "/person/" + posted.poll(), null), false);
+                default:
+                    int status = connection.exchange(connection.request("POST", "/person",
+                            "{\"firstName\":\"Load" + RUN + "-" + number + "-" + sequence++
+                                    + "\",\"lastName\":\"Load\"}"), true);
+                    Matcher id = ID.matcher(connection.body());
+                    if (status < 400 && id.find())
+                        posted.add(Long.valueOf(id.group(1)));
+                    return status;
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package uk.co.huntersix.spring.rest.benchmark;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The application running in a new JVM on the benchmarks' own classpath, e.g. target/benchmarks.jar, on a free port,
+ * for the drivers that measure it over HTTP. Closing it stops the JVM.
+ */
+final class LocalApplication implements Closeable {
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(120);
+
+    private final Process process;
+    private final int port;
+    private final long launched;
+
+    private LocalApplication(Process process, int port, long launched) {
+        this.process = process;
+        this.port = port;
+        this.launched = launched;
+    }
+
+    /**
+     * Launches the application, writing its output to log; see {@link #awaitListening()}.
+     */
+    static LocalApplication start(List<String> jvmArgs, List<String> appArgs, File log) throws IOException {
+        int port;
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+        List<String> args = new ArrayList<>(appArgs);
+        args.add("--server.port=" + port);
+        long launched = System.nanoTime();
+        return new LocalApplication(launch(jvmArgs, args, log), port, launched);
+    }
+
+    /**
+     * Launches the application without waiting for it, e.g. for a run that exits by itself.
+     */
+    static Process launch(List<String> jvmArgs, List<String> appArgs, File log) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("uk.co.huntersix.spring.rest.Application");
+        command.addAll(appArgs);
+        return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+    }
+
+    /**
+     * Waits for the server to accept connections, which it does once the context has started.
+     *
+     * @return nanoseconds from launching the JVM until then
+     */
+    long awaitListening() throws InterruptedException {
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("localhost", port), 100);
+                return System.nanoTime() - launched;
+            } catch (IOException notYet) {
+                if (!process.isAlive())
+                    throw new IllegalStateException("Application exited with " + process.exitValue());
+                if (System.nanoTime() - launched > TIMEOUT_NANOS)
+                    throw new IllegalStateException("Application did not listen on " + port);
+                Thread.sleep(2);
+            }
+        }
+    }
+
+    int port() {
+        return port;
+    }
+
+    @Override
+    public void close() {
+        process.destroy();
+        try {
+            process.waitFor();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static long timeoutNanos() {
+        return TIMEOUT_NANOS;
+    }
+}
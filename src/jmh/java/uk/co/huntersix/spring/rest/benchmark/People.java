@@ -0,0 +1,30 @@
+package uk.co.huntersix.spring.rest.benchmark;
+
+import uk.co.huntersix.spring.rest.model.Person;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class People {
+    //Roughly ten people share each surname, so surname lookups return a small list like real reference data
+    static final int PEOPLE_PER_SURNAME = 10;
+
+    private People() {
+    }
+
+    static List<Person> generate(int size) {
+        List<Person> people = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            people.add(new Person(firstName(i), lastName(i, size)));
+        }
+        return people;
+    }
+
+    static String firstName(int i) {
+        return "First" + i;
+    }
+
+    static String lastName(int i, int size) {
+        return "Last" + (i % Math.max(1, size / PEOPLE_PER_SURNAME));
+    }
+}
@@ -0,0 +1,184 @@
+package uk.co.huntersix.spring.rest.benchmark;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.referencedata.CompactPersonRepository;
+import uk.co.huntersix.spring.rest.referencedata.InMemoryPersonRepository;
+import uk.co.huntersix.spring.rest.referencedata.JdbcPersonRepository;
+import uk.co.huntersix.spring.rest.referencedata.PersonDataService;
+import uk.co.huntersix.spring.rest.referencedata.PersonRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Throughput of the PersonDataService operations against a pre-populated store.
+ * <p>
+ * Thread count is taken from the command line ({@code -t 8}); the {@code mixed} group runs readers and a writer
+ * side by side, and its read/write ratio can be changed with {@code -tg 7,1}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class PersonDataServiceBenchmark {
+
+    @Param({"10", "1000", "100000", "10000000"})
+    private int size;
+
+    //jdbc is an H2 database in a temporary directory, filled in batches before the trial
+    @Param({"indexed", "compact", "jdbc"})
+    private String store;
+
+    //none still times calls but records them nowhere, to tell the cost of the metrics apart; histogram adds the
+    //percentile histogram that management.metrics.distribution.percentiles-histogram.person.service turns on
+    @Param({"prometheus", "histogram", "none"})
+    private String metrics;
+
+    private PersonDataService service;
+    private HikariDataSource dataSource;
+    private Path database;
+    private Long[] ids;
+    //Looked up names are built up front so the benchmarks measure the service's allocations, not the caller's
+    private String[] firstNames;
+    private String[] lastNames;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<Person> people = People.generate(size);
+        service = new PersonDataService(repository(people), Collections.emptyList(), registry());
+        ids = new Long[size];
+        firstNames = new String[size];
+        lastNames = new String[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = people.get(i).getId();
+            firstNames[i] = People.firstName(i);
+            lastNames[i] = People.lastName(i, size);
+        }
+    }
+
+    private MeterRegistry registry() {
+        if ("none".equals(metrics))
+            return new CompositeMeterRegistry();
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        if ("histogram".equals(metrics)) {
+            registry.config().meterFilter(new MeterFilter() {
+                @Override
+                public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                    return DistributionStatisticConfig.builder().percentilesHistogram(true).build().merge(config);
+                }
+            });
+        }
+        return registry;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (dataSource == null)
+            return;
+        dataSource.close();
+        try (Stream<Path> files = Files.walk(database)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private PersonRepository repository(List<Person> people) throws IOException {
+        switch (store) {
+            case "compact":
+                return new CompactPersonRepository(people);
+            case "jdbc":
+                database = Files.createTempDirectory("person-db");
+                HikariConfig config = new HikariConfig();
+                config.setJdbcUrl("jdbc:h2:file:" + database.resolve("people"));
+                dataSource = new HikariDataSource(config);
+                JdbcPersonRepository repository = new JdbcPersonRepository(dataSource);
+                for (int from = 0; from < people.size(); from += 1000)
+                    repository.addAll(people.subList(from, Math.min(people.size(), from + 1000)));
+                return repository;
+            default:
+                return new InMemoryPersonRepository(people);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        private long sequence;
+
+        String nextFirstName() {
+            return "Added" + Thread.currentThread().getId() + "-" + sequence++;
+        }
+    }
+
+    @Benchmark
+    public Person findPersonByName() {
+        int i = ThreadLocalRandom.current().nextInt(size);
+        return service.findPerson(lastNames[i], firstNames[i]);
+    }
+
+    @Benchmark
+    public List<Person> findPersonByLastName() {
+        int i = ThreadLocalRandom.current().nextInt(size);
+        return service.findPerson(lastNames[i]);
+    }
+
+    @Benchmark
+    public Person updatePerson() {
+        int i = ThreadLocalRandom.current().nextInt(size);
+        return service.updatePerson(ids[i], firstNames[i]);
+    }
+
+    //Adds and deletes in pairs so the data set keeps the size the benchmark is parameterised with
+    @Benchmark
+    public Person addAndDeletePerson(Writer writer) {
+        int i = ThreadLocalRandom.current().nextInt(size);
+        Person person = service.addPerson(new Person(writer.nextFirstName(), lastNames[i]));
+        service.deletePerson(person.getId());
+        return person;
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Person mixedRead() {
+        return findPersonByName();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Person mixedWrite(Writer writer) {
+        return addAndDeletePerson(writer);
+    }
+}
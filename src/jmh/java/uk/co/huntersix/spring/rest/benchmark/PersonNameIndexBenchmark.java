@@ -0,0 +1,76 @@
+package uk.co.huntersix.spring.rest.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.co.huntersix.spring.rest.model.NameMatch;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.referencedata.CompactPersonRepository;
+import uk.co.huntersix.spring.rest.referencedata.PersonNameIndex;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of prefix and fuzzy lastName search over a given number of distinct, randomly spelled lastNames.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class PersonNameIndexBenchmark {
+    private static final String[] SYLLABLES = {"an", "ber", "ch", "do", "el", "fi", "gar", "ho", "is", "jo", "ka",
+            "li", "mo", "ne", "or", "pa", "qu", "ri", "son", "th", "ul", "ve", "wi", "xa", "yo", "zu"};
+
+    @Param({"100000", "1000000"})
+    private int names;
+
+    private PersonNameIndex index;
+    private String[] lastNames;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        CompactPersonRepository repository = new CompactPersonRepository();
+        lastNames = new String[names];
+        for (int i = 0; i < names; i++) {
+            StringBuilder lastName = new StringBuilder();
+            int syllables = 3 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                lastName.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            lastName.setCharAt(0, Character.toUpperCase(lastName.charAt(0)));
+            lastNames[i] = lastName.toString();
+            repository.add(new Person(People.firstName(i), lastNames[i]));
+        }
+        index = new PersonNameIndex(repository);
+    }
+
+    @Benchmark
+    public List<NameMatch> prefix() {
+        String lastName = lastNames[ThreadLocalRandom.current().nextInt(names)];
+        return index.findByPrefix(lastName.substring(0, 3), 10);
+    }
+
+    //A random stored lastName with one character replaced, searched allowing two edits
+    @Benchmark
+    public List<NameMatch> fuzzy() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] typo = lastNames[random.nextInt(names)].toCharArray();
+        typo[random.nextInt(typo.length)] = (char) ('a' + random.nextInt(26));
+        return index.findSimilar(new String(typo), 2, 10);
+    }
+}
@@ -0,0 +1,105 @@
+package uk.co.huntersix.spring.rest.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.co.huntersix.spring.rest.model.Person;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson encoding of the bodies PersonController returns and decoding of the POST /person body, in each wire format
+ * the API negotiates. The encoded sizes are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonSerializationBenchmark {
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    private ObjectWriter personWriter;
+    private ObjectReader personReader;
+    private ObjectReader personListReader;
+    private Person person;
+    private byte[] personBytes;
+
+    @State(Scope.Benchmark)
+    public static class PersonList {
+        @Param({"1", "100", "10000"})
+        private int listSize;
+
+        private List<Person> people;
+        private byte[] bytes;
+
+        @Setup(Level.Trial)
+        public void setUp(PersonSerializationBenchmark benchmark) throws IOException {
+            people = People.generate(listSize);
+            bytes = benchmark.personWriter.writeValueAsBytes(people);
+            System.out.printf("%n%s: %d bytes per person, %d bytes per list of %d%n",
+                    benchmark.format, benchmark.personBytes.length, bytes.length, listSize);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ObjectMapper mapper = new ObjectMapper(factory(format));
+        personWriter = mapper.writer();
+        personReader = mapper.readerFor(Person.class);
+        personListReader = mapper.readerFor(Person[].class);
+        person = new Person("Mary", "Smith");
+        personBytes = personWriter.writeValueAsBytes(person);
+    }
+
+    private static JsonFactory factory(String format) {
+        switch (format) {
+            case "smile":
+                return new SmileFactory();
+            case "cbor":
+                return new CBORFactory();
+            default:
+                return new JsonFactory();
+        }
+    }
+
+    @Benchmark
+    public byte[] writePerson() throws IOException {
+        return personWriter.writeValueAsBytes(person);
+    }
+
+    @Benchmark
+    public byte[] writePersonList(PersonList list) throws IOException {
+        return personWriter.writeValueAsBytes(list.people);
+    }
+
+    @Benchmark
+    public Person readPerson() throws IOException {
+        return personReader.readValue(personBytes);
+    }
+
+    @Benchmark
+    public Person[] readPersonList(PersonList list) throws IOException {
+        return personListReader.readValue(list.bytes);
+    }
+}
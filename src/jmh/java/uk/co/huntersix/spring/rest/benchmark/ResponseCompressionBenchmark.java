@@ -0,0 +1,80 @@
+package uk.co.huntersix.spring.rest.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.co.huntersix.spring.rest.controller.JsonResponse;
+import uk.co.huntersix.spring.rest.model.Person;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * CPU per request of a GET /person list body sent as is, gzipped on every request as Tomcat's compression does, and
+ * served from the gzipped copy a cached JsonResponse keeps. The bytes on the wire each way are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseCompressionBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int listSize;
+
+    private ObjectMapper objectMapper;
+    private List<Person> people;
+    private JsonResponse cached;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper();
+        people = People.generate(listSize);
+        cached = JsonResponse.of(people, objectMapper);
+        int identity = cached.getBody().length;
+        int gzipped = cached.getGzippedBody().length;
+        System.out.printf("%n%d people: %d bytes identity, %d bytes gzip (%.1f%%)%n",
+                listSize, identity, gzipped, 100.0 * gzipped / identity);
+    }
+
+    @Benchmark
+    public byte[] identity() {
+        return cached.getBody();
+    }
+
+    @Benchmark
+    public byte[] gzipPerRequest() throws IOException {
+        byte[] body = cached.getBody();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] precompressed() {
+        return cached.getGzippedBody();
+    }
+
+    //A cache miss: serialize the list and gzip it, paid once per cached entry
+    @Benchmark
+    public byte[] serializeAndGzip() {
+        return JsonResponse.of(people, objectMapper).getGzippedBody();
+    }
+}
@@ -0,0 +1,93 @@
+package uk.co.huntersix.spring.rest.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold starts of the application in a new JVM each time: the time from launching the JVM to the server accepting
+ * connections, and the latency of the first GET /person/smith/mary after that. Runs the default configuration, the
+ * fast-startup profile, and on Java 13 or later the fast-startup profile with a class data sharing archive made by a
+ * training run first. Prints the median and worst of each.
+ * <p>
+ * {@code java -cp target/benchmarks.jar uk.co.huntersix.spring.rest.benchmark.StartupLatency 5} starts each
+ * configuration 5 times; any further arguments are passed to the application.
+ */
+public final class StartupLatency {
+    private StartupLatency() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        List<String> appArgs = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : Collections.emptyList();
+        Path work = Files.createTempDirectory("startup");
+
+        measure("default", runs, Collections.emptyList(), appArgs, work);
+        List<String> fastStartup = new ArrayList<>(appArgs);
+        fastStartup.add("--spring.profiles.active=fast-startup");
+        measure("fast-startup", runs, Collections.emptyList(), fastStartup, work);
+
+        if (javaVersion() >= 13) {
+            String archive = work.resolve("app.jsa").toString();
+            List<String> training = new ArrayList<>(fastStartup);
+            training.add("--person.startup.exit-when-ready=true");
+            training.add("--server.port=0");
+            Process trainingRun = LocalApplication.launch(
+                    Collections.singletonList("-XX:ArchiveClassesAtExit=" + archive), training,
+                    work.resolve("training.log").toFile());
+            if (!trainingRun.waitFor(LocalApplication.timeoutNanos(), TimeUnit.NANOSECONDS)
+                    || !new File(archive).isFile())
+                throw new IllegalStateException("Training run made no archive, see " + work.resolve("training.log"));
+            measure("fast-startup+cds", runs, Collections.singletonList("-XX:SharedArchiveFile=" + archive),
+                    fastStartup, work);
+        }
+    }
+
+    private static void measure(String name, int runs, List<String> jvmArgs, List<String> appArgs, Path work)
+            throws Exception {
+        long[] ready = new long[runs];
+        long[] firstRequest = new long[runs];
+        for (int run = 0; run < runs; run++) {
+            try (LocalApplication app = LocalApplication.start(jvmArgs, appArgs,
+                    work.resolve(name + "-" + run + ".log").toFile())) {
+                ready[run] = app.awaitListening();
+                long listening = System.nanoTime();
+                int status = get(app.port(), "/person/smith/mary");
+                firstRequest[run] = System.nanoTime() - listening;
+                if (status != 200)
+                    throw new IllegalStateException("First request answered " + status);
+            }
+        }
+        Arrays.sort(ready);
+        Arrays.sort(firstRequest);
+        System.out.printf("%-17s runs=%d listening median=%.0fms max=%.0fms first request median=%.1fms max=%.1fms%n",
+                name, runs, ready[runs / 2] / 1e6, ready[runs - 1] / 1e6, firstRequest[runs / 2] / 1e6,
+                firstRequest[runs - 1] / 1e6);
+    }
+
+    private static int get(int port, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+        int status = connection.getResponseCode();
+        byte[] buffer = new byte[8192];
+        try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            while (body != null && body.read(buffer) != -1) {
+                // discard
+            }
+        }
+        return status;
+    }
+
+    private static int javaVersion() {
+        String version = System.getProperty("java.specification.version");
+        return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+    }
+}
@@ -0,0 +1,17 @@
+package uk.co.huntersix.spring.rest.Exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+//The changes asked for are no longer kept, so the reader has to start again from a snapshot
+@ResponseStatus(HttpStatus.GONE)
+public class ChangesExpiredException extends RuntimeException {
+
+    public ChangesExpiredException(String message) {
+        super(message, null, false, false);
+    }
+
+    public ChangesExpiredException() {
+        super(null, null, false, false);
+    }
+}
@@ -0,0 +1,16 @@
+package uk.co.huntersix.spring.rest.Exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidRequestException extends RuntimeException {
+
+    public InvalidRequestException(String message) {
+        super(message, null, false, false);
+    }
+
+    public InvalidRequestException() {
+        super(null, null, false, false);
+    }
+}
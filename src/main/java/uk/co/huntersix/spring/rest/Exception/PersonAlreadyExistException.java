@@ -8,10 +8,10 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 public class PersonAlreadyExistException extends RuntimeException {
 
     public PersonAlreadyExistException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 
     public PersonAlreadyExistException() {
-        super();
+        super(null, null, false, false);
     }
 }
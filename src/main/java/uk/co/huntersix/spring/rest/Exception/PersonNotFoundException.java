@@ -3,14 +3,15 @@ package uk.co.huntersix.spring.rest.Exception;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+//No stack trace: thrown on every lookup miss, where capturing one cost more than the lookup itself
 @ResponseStatus(HttpStatus.NOT_FOUND)
 public class PersonNotFoundException extends RuntimeException {
 
     public PersonNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 
     public PersonNotFoundException() {
-        super();
+        super(null, null, false, false);
     }
 }
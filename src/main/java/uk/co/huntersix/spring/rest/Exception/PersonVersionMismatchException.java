@@ -0,0 +1,17 @@
+package uk.co.huntersix.spring.rest.Exception;
+
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+public class PersonVersionMismatchException extends RuntimeException {
+
+    public PersonVersionMismatchException(String message) {
+        super(message, null, false, false);
+    }
+
+    public PersonVersionMismatchException() {
+        super(null, null, false, false);
+    }
+}
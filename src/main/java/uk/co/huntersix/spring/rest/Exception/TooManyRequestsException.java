@@ -0,0 +1,16 @@
+package uk.co.huntersix.spring.rest.Exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class TooManyRequestsException extends RuntimeException {
+
+    public TooManyRequestsException(String message) {
+        super(message, null, false, false);
+    }
+
+    public TooManyRequestsException() {
+        super(null, null, false, false);
+    }
+}
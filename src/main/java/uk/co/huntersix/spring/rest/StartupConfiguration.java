@@ -0,0 +1,84 @@
+package uk.co.huntersix.spring.rest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Opt-in startup tuning used by the fast-startup profile.
+ * <p>
+ * person.startup.lazy-init creates beans when they are first needed instead of while the context starts, so the
+ * server listens sooner and the first requests create what they use. Beans with an init method, which start work of
+ * their own, and those named in person.startup.eager-beans are still created at startup.
+ * <p>
+ * person.startup.exit-when-ready sends a few requests through the started server and exits: a training run whose
+ * loaded classes the JVM can archive for class data sharing with -XX:ArchiveClassesAtExit.
+ */
+@Configuration
+public class StartupConfiguration {
+    private static final Logger LOG = LoggerFactory.getLogger(StartupConfiguration.class);
+    //Reads, a miss and an actuator endpoint, so the request handling classes are loaded as well as the startup ones
+    private static final String[] TRAINING_PATHS = {
+            "/person/smith/mary", "/person/smith", "/person/training/run", "/actuator/health"
+    };
+
+    @Bean
+    @ConditionalOnProperty(name = "person.startup.lazy-init", havingValue = "true")
+    public static BeanFactoryPostProcessor lazyInitialization(Environment environment) {
+        Set<String> eagerBeans = new HashSet<>(Arrays.asList(
+                environment.getProperty("person.startup.eager-beans", String[].class, new String[0])));
+        return beanFactory -> {
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                if (definition instanceof AbstractBeanDefinition && !eagerBeans.contains(name)
+                        && ((AbstractBeanDefinition) definition).getInitMethodName() == null)
+                    definition.setLazyInit(true);
+            }
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "person.startup.exit-when-ready", havingValue = "true")
+    public ApplicationListener<ApplicationReadyEvent> exitWhenReady() {
+        return event -> {
+            ConfigurableApplicationContext context = event.getApplicationContext();
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            for (String path : TRAINING_PATHS) {
+                try {
+                    HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path)
+                            .openConnection();
+                    int status = connection.getResponseCode();
+                    byte[] buffer = new byte[8192];
+                    try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                        while (body != null && body.read(buffer) != -1) {
+                            // read the whole response, so its classes are loaded too
+                        }
+                    }
+                    LOG.info("Training request {} answered {}", path, status);
+                } catch (IOException ex) {
+                    LOG.warn("Training request {} failed: {}", path, ex.toString());
+                }
+            }
+            System.exit(SpringApplication.exit(context));
+        };
+    }
+}
@@ -0,0 +1,29 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import uk.co.huntersix.spring.rest.model.CacheStatistics;
+
+@RestController
+@ConditionalOnProperty(name = "person.cache.enabled", havingValue = "true", matchIfMissing = true)
+public class CacheController {
+    private PersonResponseCache personResponseCache;
+
+    public CacheController(@Autowired PersonResponseCache personResponseCache) {
+        this.personResponseCache = personResponseCache;
+    }
+
+    @GetMapping("/cache/person")
+    @ResponseStatus(HttpStatus.OK)
+    public CacheStatistics statistics() {
+        return personResponseCache.statistics();
+    }
+
+    @DeleteMapping("/cache/person")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void clear() {
+        personResponseCache.clear();
+    }
+}
@@ -0,0 +1,80 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import uk.co.huntersix.spring.rest.Exception.InvalidRequestException;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.model.PersonChange;
+import uk.co.huntersix.spring.rest.model.PersonChangeEvent;
+import uk.co.huntersix.spring.rest.model.PersonChangePage;
+import uk.co.huntersix.spring.rest.referencedata.PersonChangeLog;
+import uk.co.huntersix.spring.rest.referencedata.PersonDataService;
+
+import java.util.Iterator;
+
+@RestController
+public class ChangeController {
+    static final int MAX_CHANGES = 10_000;
+    static final long MAX_WAIT_MILLIS = 30_000;
+
+    private PersonChangeLog personChangeLog;
+    private PersonDataService personDataService;
+    private ObjectMapper objectMapper;
+
+    public ChangeController(@Autowired PersonChangeLog personChangeLog,
+                            @Autowired PersonDataService personDataService,
+                            @Autowired ObjectMapper objectMapper) {
+        this.personChangeLog = personChangeLog;
+        this.personDataService = personDataService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Changes after the given sequence number, waiting up to wait milliseconds for one when there is none yet, so
+     * followers can long-poll. 410 Gone when they are no longer kept.
+     */
+    @GetMapping("/changes/person")
+    @ResponseStatus(HttpStatus.OK)
+    public PersonChangePage changes(@RequestParam(value = "after", defaultValue = "0") long after,
+                                    @RequestParam(value = "limit", defaultValue = "1000") int limit,
+                                    @RequestParam(value = "wait", defaultValue = "0") long waitMillis)
+            throws InterruptedException {
+        if (after < 0)
+            throw new InvalidRequestException("after must not be negative");
+        if (limit < 1)
+            throw new InvalidRequestException("limit must be greater than zero");
+        return personChangeLog.read(after, Math.min(limit, MAX_CHANGES),
+                Math.max(0, Math.min(waitMillis, MAX_WAIT_MILLIS)));
+    }
+
+    //Everyone stored, as NDJSON changes. The sequence number in the header was read first, so the people are at least
+    //as new as it: applying the snapshot and then the changes after that number gives the current state.
+    @GetMapping(value = "/changes/person/snapshot", produces = PersonController.NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> snapshot() {
+        long sequence = personChangeLog.head();
+        Iterator<Person> people = personDataService.iterateAll();
+        StreamingResponseBody body = out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+            generator.setRootValueSeparator(null);
+            while (people.hasNext()) {
+                objectMapper.writeValue(generator,
+                        PersonChangeEvent.of(sequence, 0, PersonChange.Type.ADDED, people.next()));
+                generator.writeRaw('\n');
+            }
+            generator.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(PersonController.NDJSON_VALUE))
+                .header(PersonChangeLog.LOG_HEADER, personChangeLog.id())
+                .header(PersonChangeLog.SEQUENCE_HEADER, Long.toString(sequence))
+                .body(body);
+    }
+}
@@ -0,0 +1,48 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket per client, kept as the generic cell rate algorithm: each client has one theoretical arrival time,
+ * advanced by compare-and-set, so admitting a request takes no lock. A client may send burst requests at once and
+ * ratePerSecond on average after that. Idle clients are forgotten once their bucket would be full again.
+ */
+final class ClientRateLimiter {
+    //Bounds the memory many client addresses can take; the least recently used clients are dropped first
+    private static final int MAX_CLIENTS = 100_000;
+
+    private final long emissionNanos;
+    private final long toleranceNanos;
+    private final Cache<String, AtomicLong> clients;
+
+    ClientRateLimiter(double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0 || burst < 1)
+            throw new IllegalArgumentException("rate and burst must be positive");
+        this.emissionNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        this.toleranceNanos = emissionNanos * burst;
+        this.clients = Caffeine.newBuilder()
+                .maximumSize(MAX_CLIENTS)
+                .expireAfterAccess(toleranceNanos, TimeUnit.NANOSECONDS)
+                .build();
+    }
+
+    /**
+     * @return 0 when the client may send a request at nanoTime now, or else the nanoseconds until it may
+     */
+    long tryAcquire(String client, long now) {
+        AtomicLong arrival = clients.get(client, key -> new AtomicLong(now));
+        while (true) {
+            long current = arrival.get();
+            long next = Math.max(current, now) + emissionNanos;
+            long wait = next - now - toleranceNanos;
+            if (wait > 0)
+                return wait;
+            if (arrival.compareAndSet(current, next))
+                return 0;
+        }
+    }
+}
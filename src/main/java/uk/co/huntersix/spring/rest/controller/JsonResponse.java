@@ -0,0 +1,128 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import uk.co.huntersix.spring.rest.model.Person;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A GET /person response body with its strong ETag. The ETag is derived from ids and versions alone, so a
+ * conditional request can be answered before the body is serialized; the body is serialized once, on first use,
+ * and gzipped at most once, so a cached response is compressed once rather than on every request. It holds copies
+ * of the people, so the body, the encoded formats and the ETag all describe the same versions however long it is
+ * cached.
+ */
+public final class JsonResponse {
+    private final String etag;
+    private final Object value;
+    private final ObjectMapper objectMapper;
+    private volatile byte[] body;
+    private volatile byte[] gzippedBody;
+
+    private JsonResponse(String etag, Object value, ObjectMapper objectMapper) {
+        this.etag = etag;
+        this.value = value;
+        this.objectMapper = objectMapper;
+    }
+
+    public static JsonResponse of(Person person, ObjectMapper objectMapper) {
+        Person copy = person.copy();
+        return new JsonResponse(etag(copy.getId(), copy.getVersion()), copy, objectMapper);
+    }
+
+    public static JsonResponse of(List<Person> people, ObjectMapper objectMapper) {
+        List<Person> copies = new ArrayList<>(people.size());
+        long hash = people.size();
+        for (Person person : people) {
+            person = person.copy();
+            copies.add(person);
+            hash = mix(hash ^ person.getId());
+            hash = mix(hash ^ person.getVersion());
+        }
+        return new JsonResponse(String.format("\"%d-%016x\"", people.size(), hash), copies, objectMapper);
+    }
+
+    /**
+     * @return the strong ETag of a single person at the given version
+     */
+    public static String etag(Long id, long version) {
+        return "\"" + id + "-" + version + "\"";
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return the strong ETag of another representation of the same people, e.g. the gzipped body, whose bytes differ
+     * from the JSON ones and so can't share its ETag
+     */
+    public String getEtag(String variant) {
+        return etag.substring(0, etag.length() - 1) + "-" + variant + "\"";
+    }
+
+    /**
+     * @return the person or list of people the body is serialized from
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    //Requests coalesced onto one response wait for a single serialization rather than each doing their own
+    public byte[] getBody() {
+        byte[] serialized = body;
+        if (serialized != null)
+            return serialized;
+        synchronized (this) {
+            if (body == null) {
+                try {
+                    body = objectMapper.writeValueAsBytes(value);
+                } catch (JsonProcessingException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            return body;
+        }
+    }
+
+    /**
+     * @return the body gzipped, to send with Content-Encoding: gzip
+     */
+    public byte[] getGzippedBody() {
+        byte[] compressed = gzippedBody;
+        if (compressed != null)
+            return compressed;
+        byte[] serialized = getBody();
+        synchronized (this) {
+            if (gzippedBody == null)
+                gzippedBody = gzip(serialized);
+            return gzippedBody;
+        }
+    }
+
+    static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192)) {
+            gzip.write(bytes);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
+    }
+
+    //64-bit finalizer from MurmurHash3
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
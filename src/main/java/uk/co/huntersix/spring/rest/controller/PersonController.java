@@ -1,37 +1,158 @@
 package uk.co.huntersix.spring.rest.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
+import uk.co.huntersix.spring.rest.Exception.InvalidRequestException;
+import uk.co.huntersix.spring.rest.Exception.PersonVersionMismatchException;
+import uk.co.huntersix.spring.rest.model.BatchPatchRequest;
+import uk.co.huntersix.spring.rest.model.BatchResult;
+import uk.co.huntersix.spring.rest.model.NameKey;
 import uk.co.huntersix.spring.rest.model.PatchRequest;
 import uk.co.huntersix.spring.rest.model.Person;
 import uk.co.huntersix.spring.rest.referencedata.PersonDataService;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Supplier;
 
 @RestController
 public class PersonController {
+    static final String NDJSON_VALUE = "application/x-ndjson";
+    static final String SMILE_VALUE = "application/x-jackson-smile";
+    static final String CBOR_VALUE = "application/cbor";
+    private static final String GZIP = "gzip";
+    private static final MediaType[] ENCODED_FORMATS = {
+            MediaType.valueOf(SMILE_VALUE), MediaType.valueOf(CBOR_VALUE)
+    };
+    static final int MAX_PAGE_SIZE = 1000;
+
     private PersonDataService personDataService;
+    private ObjectMapper objectMapper;
+    private PersonResponseCache personResponseCache;
+    //Without the cache, which coalesces its own loads, identical lookups in progress are shared here
+    private SingleFlight<NameKey, JsonResponse> lookups = new SingleFlight<>();
+    //Smallest JSON body sent gzipped, or -1 when compression is off
+    private long minCompressedBytes;
 
-    public PersonController(@Autowired PersonDataService personDataService) {
+    public PersonController(@Autowired PersonDataService personDataService,
+                            @Autowired ObjectMapper objectMapper,
+                            @Autowired ObjectProvider<PersonResponseCache> personResponseCache,
+                            @Autowired ObjectProvider<MeterRegistry> meterRegistry,
+                            @Value("${server.compression.enabled:false}") boolean compression,
+                            @Value("${server.compression.min-response-size:2KB}") String minResponseSize) {
         this.personDataService = personDataService;
+        this.objectMapper = objectMapper;
+        this.minCompressedBytes = compression ? DataSize.parse(minResponseSize).toBytes() : -1;
+        this.personResponseCache = personResponseCache.getIfAvailable();
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (this.personResponseCache == null && registry != null) {
+            FunctionCounter.builder(SingleFlight.COALESCED, lookups, SingleFlight::coalesced)
+                    .description("Person lookups that joined an identical lookup in progress")
+                    .register(registry);
+        }
     }
 
     @GetMapping("/person/{lastName}/{firstName}")
-    @ResponseStatus(HttpStatus.OK)
-    public Person person(@PathVariable(value = "lastName") String lastName,
-                         @PathVariable(value = "firstName") String firstName) {
+    public ResponseEntity<byte[]> person(@PathVariable(value = "lastName") String lastName,
+                                         @PathVariable(value = "firstName") String firstName,
+                                         WebRequest request) {
+        return conditionalResponse(cachedPerson(lastName, firstName), request);
+    }
 
-        return personDataService.findPerson(lastName, firstName);
+    @GetMapping(value = "/person/{lastName}/{firstName}", produces = {SMILE_VALUE, CBOR_VALUE})
+    public ResponseEntity<Object> encodedPerson(@PathVariable(value = "lastName") String lastName,
+                                                @PathVariable(value = "firstName") String firstName,
+                                                WebRequest request) {
+        return conditionalEncodedResponse(cachedPerson(lastName, firstName), request);
     }
 
     @GetMapping("/person/{lastName}")
+    public ResponseEntity<byte[]> person(@PathVariable(value = "lastName") String lastName,
+                                         WebRequest request) {
+        return conditionalResponse(cachedPeople(lastName), request);
+    }
+
+    @GetMapping(value = "/person/{lastName}", produces = {SMILE_VALUE, CBOR_VALUE})
+    public ResponseEntity<Object> encodedPeople(@PathVariable(value = "lastName") String lastName,
+                                                WebRequest request) {
+        return conditionalEncodedResponse(cachedPeople(lastName), request);
+    }
+
+    @GetMapping(value = "/person/{lastName}", params = "limit")
     @ResponseStatus(HttpStatus.OK)
-    public List<Person> person(@PathVariable(value = "lastName") String lastName) {
+    public List<Person> person(@PathVariable(value = "lastName") String lastName,
+                               @RequestParam(value = "limit") int limit,
+                               @RequestParam(value = "after", required = false) Long after,
+                               HttpServletResponse httpResponse,
+                               WebRequest request) {
+        if (limit < 1)
+            throw new InvalidRequestException("limit must be greater than zero");
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+
+        List<Person> people = personDataService.findPersonPage(lastName, after, pageSize + 1);
+        if (people.size() > pageSize) {
+            people = people.subList(0, pageSize);
+            String next = UriComponentsBuilder.fromPath(request.getContextPath())
+                    .path("/person/{lastName}")
+                    .queryParam("limit", pageSize)
+                    .queryParam("after", people.get(pageSize - 1).getId())
+                    .buildAndExpand(lastName)
+                    .encode()
+                    .toUriString();
+            httpResponse.setHeader(HttpHeaders.LINK, String.format("<%s>; rel=\"next\"", next));
+        }
+        return people;
+    }
+
+    @GetMapping(value = "/person/{lastName}", produces = NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamPersonLines(@PathVariable(value = "lastName") String lastName) {
+        Iterator<Person> people = personDataService.iteratePerson(lastName);
+        StreamingResponseBody body = out -> {
+            JsonGenerator generator = createGenerator(out);
+            generator.setRootValueSeparator(null);
+            while (people.hasNext()) {
+                objectMapper.writeValue(generator, people.next());
+                generator.writeRaw('\n');
+            }
+            generator.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON_VALUE)).body(body);
+    }
 
-        return personDataService.findPerson(lastName);
+    @GetMapping(value = "/person/{lastName}", params = "stream")
+    public ResponseEntity<StreamingResponseBody> streamPersonArray(@PathVariable(value = "lastName") String lastName) {
+        Iterator<Person> people = personDataService.iteratePerson(lastName);
+        StreamingResponseBody body = out -> {
+            JsonGenerator generator = createGenerator(out);
+            generator.writeStartArray();
+            while (people.hasNext()) {
+                objectMapper.writeValue(generator, people.next());
+            }
+            generator.writeEndArray();
+            generator.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
     }
 
     @PostMapping("/person")
@@ -45,10 +166,37 @@ public class PersonController {
         return person1;
     }
 
+    @PostMapping(value = "/person/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON_VALUE})
+    @ResponseStatus(HttpStatus.OK)
+    public List<BatchResult> addPeople(InputStream body) throws IOException {
+        return personDataService.addPeople(readItems(body, Person.class));
+    }
+
+    @PatchMapping(value = "/person/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON_VALUE})
+    @ResponseStatus(HttpStatus.OK)
+    public List<BatchResult> partialUpdatePeople(InputStream body) throws IOException {
+        return personDataService.updatePeople(readItems(body, BatchPatchRequest.class));
+    }
+
+    @DeleteMapping(value = "/person/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON_VALUE})
+    @ResponseStatus(HttpStatus.OK)
+    public List<BatchResult> deletePeople(InputStream body) throws IOException {
+        return personDataService.deletePeople(readItems(body, Long.class));
+    }
+
     @PatchMapping("/person/{id}")
     @ResponseStatus(HttpStatus.OK)
-    public Person partialUpdatePerson(@PathVariable(value = "id") Long id, @RequestBody PatchRequest request) {
-        return personDataService.updatePerson(id, request.getFirstName());
+    public Person partialUpdatePerson(@PathVariable(value = "id") Long id,
+                                      @RequestBody PatchRequest request,
+                                      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                      HttpServletResponse httpResponse) {
+        Person updated = ifMatch == null || ifMatch.trim().equals("*")
+                ? personDataService.updatePerson(id, request.getFirstName())
+                : personDataService.updatePerson(id, request.getFirstName(), matchedVersion(id, ifMatch));
+        //The stored person can be renamed again before the body is written, so the ETag and body share one copy
+        Person person = updated.copy();
+        httpResponse.setHeader(HttpHeaders.ETAG, JsonResponse.etag(person.getId(), person.getVersion()));
+        return person;
     }
 
     @DeleteMapping("/person/{id}")
@@ -57,4 +205,144 @@ public class PersonController {
         personDataService.deletePerson(id);
     }
 
+    //Reads a root level JSON array or newline delimited values lazily, so a batch is never held in memory as a whole.
+    //Items before a malformed one have already been applied when the 400 is returned.
+    private <T> Iterator<T> readItems(InputStream body, Class<T> type) throws IOException {
+        MappingIterator<T> items;
+        try {
+            items = objectMapper.readerFor(type).readValues(body);
+        } catch (JsonProcessingException ex) {
+            throw new InvalidRequestException(ex.getOriginalMessage());
+        }
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return items.hasNextValue();
+                } catch (JsonProcessingException ex) {
+                    throw new InvalidRequestException(ex.getOriginalMessage());
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+
+            @Override
+            public T next() {
+                try {
+                    return items.nextValue();
+                } catch (JsonProcessingException ex) {
+                    throw new InvalidRequestException(ex.getOriginalMessage());
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        };
+    }
+
+    private JsonResponse cachedPerson(String lastName, String firstName) {
+        Supplier<JsonResponse> loader = () -> JsonResponse.of(personDataService.findPerson(lastName, firstName), objectMapper);
+
+        return personResponseCache == null
+                ? lookups.get(NameKey.of(lastName, firstName), loader)
+                : personResponseCache.person(lastName, firstName, loader);
+    }
+
+    private JsonResponse cachedPeople(String lastName) {
+        Supplier<JsonResponse> loader = () -> JsonResponse.of(personDataService.findPerson(lastName), objectMapper);
+
+        return personResponseCache == null
+                ? lookups.get(NameKey.of(lastName), loader)
+                : personResponseCache.people(lastName, loader);
+    }
+
+    //Sets the ETag and answers a matching If-None-Match with 304 and no body, so nothing is serialized for it.
+    //Bodies over the compression threshold go out gzipped from the response's own gzipped copy, which a cached
+    //response keeps; Tomcat leaves a response that already has a Content-Encoding alone. The gzipped body has its own
+    //ETag; a client revalidating it is answered without serializing, since the same ETag means the same body size.
+    private ResponseEntity<byte[]> conditionalResponse(JsonResponse response, WebRequest request) {
+        String gzipEtag = response.getEtag(GZIP);
+        boolean gzip = minCompressedBytes >= 0 && acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))
+                && (ifNoneMatchLists(request, gzipEtag) || response.getBody().length >= minCompressedBytes);
+        if (request.checkNotModified(gzip ? gzipEtag : response.getEtag()))
+            return null;
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+        if (!gzip)
+            return ok.body(response.getBody());
+        return ok.header(HttpHeaders.CONTENT_ENCODING, GZIP).body(response.getGzippedBody());
+    }
+
+    private static boolean ifNoneMatchLists(WebRequest request, String etag) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        return ifNoneMatch != null && ifNoneMatch.contains(etag);
+    }
+
+    //True when Accept-Encoding lists gzip without q=0
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null)
+            return false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            if (!parameters[0].trim().equalsIgnoreCase("gzip"))
+                continue;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=") && parameter.substring(2).matches("0(\\.0*)?"))
+                    return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    //Smile and CBOR bodies are encoded from the cached people by the message converter for the format the Accept
+    //header prefers. Each format's bytes differ, so its ETag is the JSON one suffixed with the format's subtype.
+    private static ResponseEntity<Object> conditionalEncodedResponse(JsonResponse response, WebRequest request) {
+        MediaType format = encodedFormat(request.getHeader(HttpHeaders.ACCEPT));
+        if (request.checkNotModified(response.getEtag(format.getSubtype())))
+            return null;
+        return ResponseEntity.ok().contentType(format).varyBy(HttpHeaders.ACCEPT).body(response.getValue());
+    }
+
+    //Smile or CBOR, whichever the Accept header ranks first; set as the Content-Type, so the body matches its ETag
+    static MediaType encodedFormat(String accept) {
+        if (accept != null) {
+            List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+            MediaType.sortBySpecificityAndQuality(accepted);
+            for (MediaType type : accepted) {
+                if (type.getQualityValue() == 0)
+                    continue;
+                for (MediaType format : ENCODED_FORMATS) {
+                    if (type.includes(format))
+                        return format;
+                }
+            }
+        }
+        return ENCODED_FORMATS[0];
+    }
+
+    //If-Match takes the strong ETag of a single person, or of its gzipped, Smile or CBOR body, which all tag the same
+    //version; a weak, malformed or other person's ETag can never match
+    private static Long matchedVersion(Long id, String ifMatch) {
+        String etag = ifMatch.trim();
+        String prefix = "\"" + id + "-";
+        if (!etag.startsWith(prefix) || !etag.endsWith("\"") || etag.length() <= prefix.length() + 1)
+            throw new PersonVersionMismatchException("If-Match does not match the person with given id");
+        int variant = etag.indexOf('-', prefix.length());
+        try {
+            return Long.valueOf(etag.substring(prefix.length(), variant < 0 ? etag.length() - 1 : variant));
+        } catch (NumberFormatException ex) {
+            throw new PersonVersionMismatchException("If-Match does not match the person with given id");
+        }
+    }
+
+    //The servlet container owns the response stream, and a flush per row would turn every person into its own chunk
+    private JsonGenerator createGenerator(OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        return generator;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,116 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import uk.co.huntersix.spring.rest.model.CacheStatistics;
+import uk.co.huntersix.spring.rest.model.NameKey;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.model.PersonChange;
+import uk.co.huntersix.spring.rest.referencedata.PersonChangeListener;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of serialized GET /person responses and their ETags, keyed by the names compared ignoring case.
+ * <p>
+ * Entries are weighed by their size in bytes and evicted with Caffeine's W-TinyLFU policy. Every change published by
+ * PersonDataService invalidates the surname list and the full names it touches.
+ * <p>
+ * A miss stores an incomplete future and loads outside the cache's locks. Concurrent requests for the key join that
+ * one load and its serialized body instead of looking the person up again, and are counted as coalesced. A failed
+ * lookup (e.g. not found) reaches everyone who joined it and is not cached. A load that races with a change cannot
+ * leave a stale entry: invalidating a key drops the load in progress for it, so its result is never cached.
+ */
+@Component
+@ConditionalOnProperty(name = "person.cache.enabled", havingValue = "true", matchIfMissing = true)
+public class PersonResponseCache implements PersonChangeListener, MeterBinder {
+    //Rough per-entry cost of the key, node and object headers on top of the body bytes. A gzipped copy made later
+    //is not weighed; it is a tenth to a quarter of the body, so max-bytes undercounts by at most that much
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final AsyncCache<NameKey, JsonResponse> responses;
+    private final Cache<NameKey, JsonResponse> cache;
+    private final LongAdder coalesced = new LongAdder();
+
+    public PersonResponseCache(@Value("${person.cache.max-bytes:67108864}") long maxBytes,
+                               @Value("${person.cache.ttl-seconds:0}") long ttlSeconds) {
+        Caffeine<NameKey, JsonResponse> builder = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((NameKey key, JsonResponse response) ->
+                        response.getBody().length + response.getEtag().length() + ENTRY_OVERHEAD)
+                .recordStats();
+        if (ttlSeconds > 0)
+            builder.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS);
+        this.responses = builder.buildAsync();
+        this.cache = responses.synchronous();
+    }
+
+    public JsonResponse person(String lastName, String firstName, Supplier<JsonResponse> loader) {
+        return get(NameKey.of(lastName, firstName), loader);
+    }
+
+    public JsonResponse people(String lastName, Supplier<JsonResponse> loader) {
+        return get(NameKey.of(lastName), loader);
+    }
+
+    //The caller that put the future in runs the load, on its own thread
+    private JsonResponse get(NameKey key, Supplier<JsonResponse> loader) {
+        CompletableFuture<JsonResponse> load = new CompletableFuture<>();
+        CompletableFuture<JsonResponse> response = responses.get(key, (k, executor) -> load);
+        if (response == load)
+            return SingleFlight.complete(load, loader);
+        if (!response.isDone())
+            coalesced.increment();
+        return SingleFlight.join(response);
+    }
+
+    @Override
+    public void personChanged(PersonChange change) {
+        Person person = change.getPerson();
+        cache.invalidate(NameKey.of(person.getLastName()));
+        cache.invalidate(NameKey.of(person.getLastName(), person.getFirstName()));
+        if (change.getPreviousFirstName() != null)
+            cache.invalidate(NameKey.of(person.getLastName(), change.getPreviousFirstName()));
+    }
+
+    //cache_gets, cache_evictions, cache_size etc. tagged cache=person.responses
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics(cache, "person.responses", Collections.emptyList()).bindTo(registry);
+        FunctionCounter.builder(SingleFlight.COALESCED, coalesced, LongAdder::sum)
+                .description("Person lookups that joined an identical lookup in progress")
+                .register(registry);
+    }
+
+    long coalesced() {
+        return coalesced.sum();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public CacheStatistics statistics() {
+        //Eviction runs asynchronously; finish what is pending so the counts are current
+        cache.cleanUp();
+        CacheStats stats = cache.stats();
+        long weightedSize = cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0))
+                .orElse(0L);
+        return new CacheStatistics(stats.hitCount(), stats.missCount(), stats.hitRate(), stats.evictionCount(),
+                cache.estimatedSize(), weightedSize);
+    }
+}
@@ -0,0 +1,45 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A follower serves reads from its replica and sends writes to the leader: POST, PUT, PATCH and DELETE requests to
+ * the person endpoints get 307 Temporary Redirect to the same URL on the leader, which clients repeat with the same
+ * method and body.
+ */
+@Configuration
+@ConditionalOnProperty(name = "person.replication.leader-url")
+public class ReplicaConfiguration implements WebMvcConfigurer {
+    private final String leaderUrl;
+
+    public ReplicaConfiguration(@Value("${person.replication.leader-url}") String leaderUrl) {
+        this.leaderUrl = leaderUrl.endsWith("/") ? leaderUrl.substring(0, leaderUrl.length() - 1) : leaderUrl;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                if ("GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod())
+                        || "OPTIONS".equals(request.getMethod()))
+                    return true;
+                String query = request.getQueryString();
+                response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+                response.setHeader(HttpHeaders.LOCATION, leaderUrl + request.getRequestURI()
+                        + (query == null ? "" : "?" + query));
+                return false;
+            }
+        }).addPathPatterns("/person", "/person/**");
+    }
+}
@@ -0,0 +1,42 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import uk.co.huntersix.spring.rest.Exception.InvalidRequestException;
+import uk.co.huntersix.spring.rest.model.NameMatch;
+import uk.co.huntersix.spring.rest.referencedata.PersonNameIndex;
+
+import java.util.List;
+
+@RestController
+public class SearchController {
+    static final int MAX_RESULTS = 100;
+
+    private PersonNameIndex personNameIndex;
+
+    public SearchController(@Autowired PersonNameIndex personNameIndex) {
+        this.personNameIndex = personNameIndex;
+    }
+
+    /**
+     * "Smi*" finds lastNames starting with "Smi"; anything else finds lastNames within maxEdits typos of it. Without
+     * maxEdits, names of up to 2 characters must match exactly, up to 5 allow 1 edit and longer ones 2.
+     */
+    @GetMapping("/search/person")
+    @ResponseStatus(HttpStatus.OK)
+    public List<NameMatch> searchLastName(@RequestParam(value = "lastName") String lastName,
+                                          @RequestParam(value = "maxEdits", required = false) Integer maxEdits,
+                                          @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        if (limit < 1)
+            throw new InvalidRequestException("limit must be greater than zero");
+        if (maxEdits != null && (maxEdits < 0 || maxEdits > PersonNameIndex.MAX_EDITS))
+            throw new InvalidRequestException("maxEdits must be between 0 and " + PersonNameIndex.MAX_EDITS);
+        int results = Math.min(limit, MAX_RESULTS);
+
+        if (lastName.endsWith("*"))
+            return personNameIndex.findByPrefix(lastName.substring(0, lastName.length() - 1), results);
+        int edits = maxEdits != null ? maxEdits : lastName.length() <= 2 ? 0 : lastName.length() <= 5 ? 1 : 2;
+        return personNameIndex.findSimilar(lastName, edits, results);
+    }
+}
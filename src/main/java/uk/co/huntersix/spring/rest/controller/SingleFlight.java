@@ -0,0 +1,67 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs one computation per key at a time. Callers asking for a key while it is being computed wait for that
+ * computation and get its result, or its exception, instead of computing it again. Nothing is kept afterwards.
+ */
+final class SingleFlight<K, V> {
+    //Callers that joined a computation already running, here and in PersonResponseCache
+    static final String COALESCED = "person.lookups.coalesced";
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+
+    V get(K key, Supplier<V> computation) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            coalesced.increment();
+            return join(running);
+        }
+        try {
+            return complete(flight, computation);
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    long coalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Completes flight with what computation returns or throws, and returns or throws the same.
+     */
+    static <V> V complete(CompletableFuture<V> flight, Supplier<V> computation) {
+        try {
+            V value = computation.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * @return the result of a computation run by another caller, rethrowing its exception as it was thrown
+     */
+    static <V> V join(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            if (ex.getCause() instanceof Error)
+                throw (Error) ex.getCause();
+            throw ex;
+        }
+    }
+}
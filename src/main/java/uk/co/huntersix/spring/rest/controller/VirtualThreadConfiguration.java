@@ -0,0 +1,42 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import org.apache.coyote.AbstractProtocol;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in serving of requests on virtual threads, one per request, instead of on Tomcat's pool of
+ * server.tomcat.max-threads. Requests waiting on I/O, e.g. for the write-ahead log's fsync, then no longer cap how many
+ * requests are in progress; server.tomcat.max-connections does.
+ * <p>
+ * Needs Java 21 or later at run time. The code is still built for Java 8, so the executor is looked up reflectively
+ * and startup fails when it is missing.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfiguration {
+
+    //Not a bean: an Executor bean would also replace the task executor Boot gives Spring MVC's async requests
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadTomcatCustomizer() {
+        Executor executor = virtualThreadExecutor();
+        return factory -> factory.addConnectorCustomizers(connector ->
+                ((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(executor));
+    }
+
+    //Virtual threads hold no resources when idle, so the executor needs no shutdown
+    private static Executor virtualThreadExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("spring.threads.virtual.enabled needs Java 21 or later, running on "
+                    + System.getProperty("java.version"), ex);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Smile (application/x-jackson-smile) and CBOR (application/cbor) bodies next to JSON, chosen by the Accept and
+ * Content-Type headers. Spring MVC registers both converters when their Jackson data formats are on the classpath, and
+ * they read and write the same models as JSON.
+ */
+@Configuration
+public class WireFormatConfiguration implements WebMvcConfigurer {
+
+    //Jackson converters default to UTF-8, which would add a meaningless charset to these binary content types
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter instanceof MappingJackson2SmileHttpMessageConverter
+                    || converter instanceof MappingJackson2CborHttpMessageConverter)
+                ((AbstractHttpMessageConverter<?>) converter).setDefaultCharset(null);
+        }
+    }
+}
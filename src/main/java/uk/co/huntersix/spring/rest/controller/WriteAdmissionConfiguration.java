@@ -0,0 +1,60 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Rate limits and admission control for the person write endpoints, see WriteAdmissionInterceptor. Both are off
+ * unless configured: a rate of 0 turns the per-client limit off, and a max-concurrent of 0 the concurrency limit.
+ */
+@Configuration
+public class WriteAdmissionConfiguration implements WebMvcConfigurer {
+    private final WriteAdmissionInterceptor interceptor;
+
+    public WriteAdmissionConfiguration(@Value("${person.write.rate-per-second:0}") double ratePerSecond,
+                                       @Value("${person.write.burst:2000}") int burst,
+                                       @Value("${person.write.api-keys:}") String[] apiKeys,
+                                       @Value("${person.write.max-concurrent:0}") int maxConcurrent,
+                                       @Value("${person.write.max-latency-ms:250}") long maxLatencyMillis,
+                                       @Autowired ObjectProvider<MeterRegistry> meterRegistry) {
+        ClientRateLimiter rateLimiter = ratePerSecond > 0 ? new ClientRateLimiter(ratePerSecond, burst) : null;
+        Set<String> keys = Arrays.stream(apiKeys).map(String::trim).filter(key -> !key.isEmpty())
+                .collect(Collectors.toSet());
+        this.interceptor = new WriteAdmissionInterceptor(rateLimiter, keys, maxConcurrent,
+                TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis), System::nanoTime);
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            FunctionCounter.builder("person.writes.rejected", interceptor, WriteAdmissionInterceptor::rateLimited)
+                    .tag("reason", "rate")
+                    .description("Writes answered with 429 because their client went over its rate")
+                    .register(registry);
+            FunctionCounter.builder("person.writes.rejected", interceptor, WriteAdmissionInterceptor::shed)
+                    .tag("reason", "overload")
+                    .description("Writes answered with 429 because too many were in progress")
+                    .register(registry);
+            Gauge.builder("person.writes.in.flight", interceptor, WriteAdmissionInterceptor::inFlight)
+                    .description("Writes admitted and not yet completed")
+                    .register(registry);
+            Gauge.builder("person.writes.concurrency.limit", interceptor, WriteAdmissionInterceptor::concurrencyLimit)
+                    .description("Writes that may be in progress at the current latency")
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(interceptor).addPathPatterns("/person", "/person/**");
+    }
+}
@@ -0,0 +1,130 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.HandlerInterceptor;
+import uk.co.huntersix.spring.rest.Exception.TooManyRequestsException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Admits POST, PUT, PATCH and DELETE requests to the person endpoints, so bulk writers cannot crowd out readers.
+ * A write is answered with 429 and Retry-After when its client has used up its token bucket, or when as many writes
+ * are in progress as the concurrency limit allows. The limit is max-concurrent while the smoothed write latency stays
+ * within max-latency, and shrinks in proportion as latency goes past it. At least one write is always admitted, so the
+ * latency keeps being measured and the limit recovers.
+ * <p>
+ * A client is its API key only when the key is one of those configured; any other key is ignored, so a writer can't
+ * get a fresh bucket by making up a key per request.
+ */
+final class WriteAdmissionInterceptor implements HandlerInterceptor {
+    static final String API_KEY = "X-API-Key";
+    private static final String STARTED = WriteAdmissionInterceptor.class.getName() + ".started";
+    //Each completed write moves the smoothed latency an eighth of the way to its own
+    private static final int LATENCY_SMOOTHING = 8;
+
+    private final ClientRateLimiter rateLimiter;
+    private final Set<String> apiKeys;
+    private final int maxConcurrent;
+    private final long maxLatencyNanos;
+    private final LongSupplier nanoTime;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong latencyNanos = new AtomicLong();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    /**
+     * @param rateLimiter     null to admit any number of writes per client
+     * @param apiKeys         the API keys that each get a bucket of their own
+     * @param maxConcurrent   0 to admit any number of writes at a time
+     * @param maxLatencyNanos 0 to keep the concurrency limit whatever the latency
+     */
+    WriteAdmissionInterceptor(ClientRateLimiter rateLimiter, Set<String> apiKeys, int maxConcurrent,
+                              long maxLatencyNanos, LongSupplier nanoTime) {
+        this.rateLimiter = rateLimiter;
+        this.apiKeys = apiKeys;
+        this.maxConcurrent = maxConcurrent;
+        this.maxLatencyNanos = maxLatencyNanos;
+        this.nanoTime = nanoTime;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!isWrite(request.getMethod()))
+            return true;
+        long now = nanoTime.getAsLong();
+        if (rateLimiter != null) {
+            long wait = rateLimiter.tryAcquire(client(request), now);
+            if (wait > 0) {
+                rateLimited.increment();
+                throw tooManyRequests(response, wait, "Write rate limit exceeded");
+            }
+        }
+        if (inFlight.incrementAndGet() > concurrencyLimit()) {
+            inFlight.decrementAndGet();
+            shed.increment();
+            throw tooManyRequests(response, TimeUnit.SECONDS.toNanos(1), "Too many writes in progress");
+        }
+        request.setAttribute(STARTED, now);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        Object started = request.getAttribute(STARTED);
+        if (started == null)
+            return;
+        request.removeAttribute(STARTED);
+        inFlight.decrementAndGet();
+        long latency = nanoTime.getAsLong() - (Long) started;
+        long current;
+        do {
+            current = latencyNanos.get();
+        } while (!latencyNanos.compareAndSet(current, current + (latency - current) / LATENCY_SMOOTHING));
+    }
+
+    int concurrencyLimit() {
+        if (maxConcurrent <= 0)
+            return Integer.MAX_VALUE;
+        long latency = latencyNanos.get();
+        if (maxLatencyNanos <= 0 || latency <= maxLatencyNanos)
+            return maxConcurrent;
+        return (int) Math.max(1, maxConcurrent * maxLatencyNanos / latency);
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    long rateLimited() {
+        return rateLimited.sum();
+    }
+
+    long shed() {
+        return shed.sum();
+    }
+
+    private static boolean isWrite(String method) {
+        return "POST".equals(method) || "PUT".equals(method) || "PATCH".equals(method) || "DELETE".equals(method);
+    }
+
+    //Clients are told apart by a configured API key, or by address when they send none or an unknown one
+    private String client(HttpServletRequest request) {
+        String apiKey = request.getHeader(API_KEY);
+        return apiKey != null && apiKeys.contains(apiKey) ? "key:" + apiKey : "address:" + request.getRemoteAddr();
+    }
+
+    private static TooManyRequestsException tooManyRequests(HttpServletResponse response, long waitNanos,
+                                                            String message) {
+        long seconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+        return new TooManyRequestsException(message);
+    }
+}
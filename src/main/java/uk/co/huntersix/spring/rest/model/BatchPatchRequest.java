@@ -0,0 +1,17 @@
+package uk.co.huntersix.spring.rest.model;
+
+public class BatchPatchRequest extends PatchRequest {
+
+    private Long id;
+
+    public BatchPatchRequest() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+}
@@ -0,0 +1,28 @@
+package uk.co.huntersix.spring.rest.model;
+
+public class BatchResult {
+
+    public enum Status {
+        CREATED, UPDATED, DELETED, CONFLICT, NOT_FOUND
+    }
+
+    private Status status;
+    private Long id;
+
+    private BatchResult() {
+        // empty
+    }
+
+    public BatchResult(Status status, Long id) {
+        this.status = status;
+        this.id = id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,51 @@
+package uk.co.huntersix.spring.rest.model;
+
+public class CacheStatistics {
+    private long hitCount;
+    private long missCount;
+    private double hitRate;
+    private long evictionCount;
+    private long entryCount;
+    private long weightedSize;
+
+    private CacheStatistics() {
+        // empty
+    }
+
+    public CacheStatistics(long hitCount, long missCount, double hitRate, long evictionCount,
+                           long entryCount, long weightedSize) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.hitRate = hitRate;
+        this.evictionCount = evictionCount;
+        this.entryCount = entryCount;
+        this.weightedSize = weightedSize;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRate() {
+        return hitRate;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the approximate size of the cached responses in bytes
+     */
+    public long getWeightedSize() {
+        return weightedSize;
+    }
+}
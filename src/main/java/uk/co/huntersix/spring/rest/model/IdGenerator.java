@@ -0,0 +1,19 @@
+package uk.co.huntersix.spring.rest.model;
+
+/**
+ * Source of new Person ids. Implementations are thread safe and never hand out the same id twice.
+ */
+public interface IdGenerator {
+
+    long nextId();
+
+    /**
+     * @return an id at least as large as every id handed out so far
+     */
+    long lastAssignedId();
+
+    /**
+     * Ids up to maxId were assigned elsewhere, e.g. loaded reference data, so ids handed out from now on are larger.
+     */
+    void reserve(long maxId);
+}
@@ -0,0 +1,105 @@
+package uk.co.huntersix.spring.rest.model;
+
+/**
+ * Key of a lastName, or of a lastName and firstName, that matches names the way String.equalsIgnoreCase does.
+ * <p>
+ * The names are kept as given: the hash is computed once from the folded chars and equality compares chars
+ * ignoring case, so making a key for a lookup allocates nothing but the key. A null name is keyed like an empty one.
+ */
+public final class NameKey {
+    private final String lastName;
+    //null in lastName-only keys, so they never equal a full name key
+    private final String firstName;
+    private final int hash;
+
+    private NameKey(String lastName, String firstName) {
+        this.lastName = lastName == null ? "" : lastName;
+        this.firstName = firstName;
+        int h = hash(this.lastName);
+        this.hash = firstName == null ? h : 31 * h + hash(firstName) + 1;
+    }
+
+    public static NameKey of(String lastName) {
+        return new NameKey(lastName, null);
+    }
+
+    public static NameKey of(String lastName, String firstName) {
+        return new NameKey(lastName, firstName == null ? "" : firstName);
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    /**
+     * @return the firstName, or null for a lastName-only key
+     */
+    public String getFirstName() {
+        return firstName;
+    }
+
+    /**
+     * @return the lastName-only key of this key's lastName
+     */
+    public NameKey lastNameKey() {
+        return firstName == null ? this : new NameKey(lastName, null);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof NameKey)) return false;
+        NameKey key = (NameKey) o;
+        return hash == key.hash
+                && equalIgnoringCase(lastName, key.lastName)
+                && (firstName == null ? key.firstName == null : equalIgnoringCase(firstName, key.firstName));
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return firstName == null ? lastName : lastName + ", " + firstName;
+    }
+
+    //Folds every char the same way String.equalsIgnoreCase compares them, so equal keys mean equalsIgnoreCase names
+    public static char fold(char c) {
+        if (c < 0x80)
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    public static String fold(String name) {
+        if (name == null)
+            return null;
+        char[] chars = null;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            char folded = fold(c);
+            if (folded != c) {
+                if (chars == null)
+                    chars = name.toCharArray();
+                chars[i] = folded;
+            }
+        }
+        return chars == null ? name : new String(chars);
+    }
+
+    /**
+     * @return the hash of the lastName-only key of name, for tables keyed by names compared ignoring case
+     */
+    public static int hash(String name) {
+        int h = 0;
+        for (int i = 0; i < name.length(); i++) {
+            h = 31 * h + fold(name.charAt(i));
+        }
+        return h;
+    }
+
+    private static boolean equalIgnoringCase(String a, String b) {
+        return a.length() == b.length() && a.regionMatches(true, 0, b, 0, a.length());
+    }
+}
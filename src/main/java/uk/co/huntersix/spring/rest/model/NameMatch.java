@@ -0,0 +1,33 @@
+package uk.co.huntersix.spring.rest.model;
+
+public class NameMatch {
+    private String lastName;
+    private int count;
+    private int distance;
+
+    private NameMatch() {
+        // empty
+    }
+
+    /**
+     * @param count    the number of people with the lastName
+     * @param distance the number of single character edits between the query and the lastName
+     */
+    public NameMatch(String lastName, int count, int distance) {
+        this.lastName = lastName;
+        this.count = count;
+        this.distance = distance;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getDistance() {
+        return distance;
+    }
+}
@@ -1,27 +1,43 @@
 package uk.co.huntersix.spring.rest.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.util.StringJoiner;
-import java.util.concurrent.atomic.AtomicLong;
 
 public class Person {
     //A static variable stays in the memory for the entire lifetime of the application, and is initialised during class loading.
     //A non-static variable is being initialised each time you construct a new object.If it is only final, it will be always zero for each instance.
-    private static final AtomicLong counter = new AtomicLong();
+    private static volatile IdGenerator idGenerator = new SequenceIdGenerator();
 
     private Long id;
     private String firstName;
     private String lastName;
+    //Written after the fields it versions, so a reader that sees a version also sees the names it was given for
+    @JsonIgnore
+    private volatile long version = 1;
 
     private Person() {
         // empty
     }
 
     public Person(String firstName, String lastName) {
-        this.id = counter.incrementAndGet();
+        this.id = idGenerator.nextId();
+        this.firstName = firstName;
+        this.lastName = lastName;
+    }
+
+    //For people that already have an id, e.g. copies of stored rows; doesn't take an id from the generator
+    public Person(Long id, String firstName, String lastName) {
+        this.id = id;
         this.firstName = firstName;
         this.lastName = lastName;
     }
 
+    public Person(Long id, String firstName, String lastName, long version) {
+        this(id, firstName, lastName);
+        this.version = version;
+    }
+
     public Long getId() {
         return id;
     }
@@ -42,22 +58,66 @@ public class Person {
         return lastName;
     }
 
+    /**
+     * Starts at 1 and goes up by one with every update; not part of the JSON representation.
+     */
+    @JsonIgnore
+    public long getVersion() {
+        return version;
+    }
+
+    @JsonIgnore
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return new StringJoiner(", ", Person.class.getSimpleName() + "[", "]")
                 .add("id=" + id)
                 .add("firstName='" + firstName + "'")
                 .add("lastName='" + lastName + "'")
+                .add("version=" + version)
                 .toString();
     }
 
+    //Changes the first name and the version together, so copy() never sees one without the other
+    public synchronized void rename(String firstName) {
+        this.firstName = firstName;
+        this.version = version + 1;
+    }
+
+    /**
+     * @return a detached copy of this person's current names and version, which later updates don't change
+     */
+    public synchronized Person copy() {
+        return new Person(id, firstName, lastName, version);
+    }
+
     public void setLastName(String lastName) {
         this.lastName = lastName;
     }
 
     public void fillId() {
         if (this.id == null)
-            this.id = counter.incrementAndGet();
+            this.id = idGenerator.nextId();
+    }
+
+    public static long lastAssignedId() {
+        return idGenerator.lastAssignedId();
+    }
+
+    //Ids up to maxId were assigned outside this class (e.g. loaded reference data), so the generator must skip them
+    public static void reserveIds(long maxId) {
+        idGenerator.reserve(maxId);
+    }
+
+    /**
+     * Takes new ids from the given generator, after every id the current one has handed out.
+     */
+    public static void useIdGenerator(IdGenerator generator) {
+        generator.reserve(idGenerator.lastAssignedId());
+        idGenerator = generator;
     }
 
 
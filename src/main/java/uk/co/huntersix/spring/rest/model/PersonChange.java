@@ -0,0 +1,38 @@
+package uk.co.huntersix.spring.rest.model;
+
+public class PersonChange {
+
+    public enum Type {
+        ADDED, UPDATED, DELETED
+    }
+
+    private Type type;
+    private Person person;
+    private String previousFirstName;
+
+    private PersonChange() {
+        // empty
+    }
+
+    /**
+     * @param person            the person after the change, or as it was when it was deleted
+     * @param previousFirstName the first name before an update, null for other changes
+     */
+    public PersonChange(Type type, Person person, String previousFirstName) {
+        this.type = type;
+        this.person = person;
+        this.previousFirstName = previousFirstName;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Person getPerson() {
+        return person;
+    }
+
+    public String getPreviousFirstName() {
+        return previousFirstName;
+    }
+}
@@ -0,0 +1,72 @@
+package uk.co.huntersix.spring.rest.model;
+
+/**
+ * A change from the change log of one node, numbered in the order the node applied its changes. It holds the whole
+ * person after the change, with its version, so a follower can apply it without the changes before it.
+ */
+public class PersonChangeEvent {
+    private long sequence;
+    private long timestamp;
+    private PersonChange.Type type;
+    private Long id;
+    private String firstName;
+    private String lastName;
+    private long version;
+
+    private PersonChangeEvent() {
+        // empty
+    }
+
+    public PersonChangeEvent(long sequence, long timestamp, PersonChange.Type type, Long id, String firstName,
+                             String lastName, long version) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.id = id;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.version = version;
+    }
+
+    //Built from a copy, so the names and the version are from the same update however the person changes meanwhile
+    public static PersonChangeEvent of(long sequence, long timestamp, PersonChange.Type type, Person person) {
+        Person copy = person.copy();
+        return new PersonChangeEvent(sequence, timestamp, type, copy.getId(), copy.getFirstName(),
+                copy.getLastName(), copy.getVersion());
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return when the change was logged, in milliseconds since the epoch on the node's clock
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public PersonChange.Type getType() {
+        return type;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Person toPerson() {
+        return new Person(id, firstName, lastName, version);
+    }
+}
@@ -0,0 +1,37 @@
+package uk.co.huntersix.spring.rest.model;
+
+import java.util.List;
+
+/**
+ * Changes read from a node's change log, with the log they come from and its latest sequence number.
+ */
+public class PersonChangePage {
+    private String log;
+    private long head;
+    private List<PersonChangeEvent> changes;
+
+    private PersonChangePage() {
+        // empty
+    }
+
+    public PersonChangePage(String log, long head, List<PersonChangeEvent> changes) {
+        this.log = log;
+        this.head = head;
+        this.changes = changes;
+    }
+
+    /**
+     * @return the id of the log, new every time the node starts, as sequence numbers start again with it
+     */
+    public String getLog() {
+        return log;
+    }
+
+    public long getHead() {
+        return head;
+    }
+
+    public List<PersonChangeEvent> getChanges() {
+        return changes;
+    }
+}
@@ -0,0 +1,25 @@
+package uk.co.huntersix.spring.rest.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ids 1, 2, 3... from one counter shared by all threads; every id is larger than those handed out before it.
+ */
+public final class SequenceIdGenerator implements IdGenerator {
+    private final AtomicLong counter = new AtomicLong();
+
+    @Override
+    public long nextId() {
+        return counter.incrementAndGet();
+    }
+
+    @Override
+    public long lastAssignedId() {
+        return counter.get();
+    }
+
+    @Override
+    public void reserve(long maxId) {
+        counter.accumulateAndGet(maxId, Math::max);
+    }
+}
@@ -0,0 +1,67 @@
+package uk.co.huntersix.spring.rest.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Snowflake-style ids: milliseconds since 2020-01-01 in the top 41 bits, the node in the next 10 and a sequence
+ * within the millisecond in the low 12. Nodes with different numbers never clash, and ids from one node always rise.
+ * Past 4096 ids in a millisecond, or if the clock goes back, ids borrow from the following milliseconds.
+ * <p>
+ * The ids need 63 bits, more than a JavaScript number holds exactly.
+ */
+public final class SnowflakeIdGenerator implements IdGenerator {
+    static final long EPOCH_MILLIS = 1577836800000L;
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long node;
+    private final LongSupplier currentTimeMillis;
+    //Milliseconds and sequence of the last id, without the node bits, so incrementing carries into the milliseconds
+    private final AtomicLong last = new AtomicLong();
+
+    public SnowflakeIdGenerator(int node) {
+        this(node, System::currentTimeMillis);
+    }
+
+    SnowflakeIdGenerator(int node, LongSupplier currentTimeMillis) {
+        if (node < 0 || node > MAX_NODE)
+            throw new IllegalArgumentException("node must be between 0 and " + MAX_NODE);
+        this.node = node;
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    @Override
+    public long nextId() {
+        long now = (currentTimeMillis.getAsLong() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        long next = last.updateAndGet(previous -> Math.max(previous + 1, now));
+        return id(next);
+    }
+
+    @Override
+    public long lastAssignedId() {
+        return id(last.get());
+    }
+
+    //Reserved ids may come from any node, so ids from here on start in a later millisecond than maxId
+    @Override
+    public void reserve(long maxId) {
+        long millis = maxId >>> (NODE_BITS + SEQUENCE_BITS);
+        last.accumulateAndGet((millis << SEQUENCE_BITS) | SEQUENCE_MASK, Math::max);
+    }
+
+    private long id(long millisAndSequence) {
+        long millis = millisAndSequence >>> SEQUENCE_BITS;
+        return (millis << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | (millisAndSequence & SEQUENCE_MASK);
+    }
+
+    static long millis(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    static long node(long id) {
+        return (id >>> SEQUENCE_BITS) & MAX_NODE;
+    }
+}
@@ -0,0 +1,553 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import uk.co.huntersix.spring.rest.Exception.PersonVersionMismatchException;
+import uk.co.huntersix.spring.rest.model.NameKey;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.model.PersonChange;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Person store for data sets of tens of millions of people. Rows live in primitive columns, the id and full name
+ * indexes are primitive hash maps and names are dictionary-encoded, so a surname shared by many people is stored once.
+ * Person objects are only created as copies when they are returned, so changes made to them are not stored.
+ * <p>
+ * Reads share a read lock and writes take the write lock, so writes are serialized, unlike the per-id striping of
+ * InMemoryPersonRepository, which suits read-mostly reference data. A write moves at most one chunk of a lastName's
+ * rows, however many people share it, and a name leaves the dictionary with the last person using it.
+ */
+public class CompactPersonRepository implements PersonRepository {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int VIEW_BATCH = 256;
+    private static final int CHUNK_SIZE = 512;
+    private static final int NO_ROW = LongIntHashMap.NO_VALUE;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NameDictionary names = new NameDictionary();
+    private final LongIntHashMap rowById = new LongIntHashMap(INITIAL_CAPACITY);
+    //First row, in id order, of every (lastName, firstName) key; later rows with the same key follow nextSameName
+    private final LongIntHashMap rowByFullName = new LongIntHashMap(INITIAL_CAPACITY);
+    private RowList[] rowsByLastName = new RowList[64];
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] versions = new long[INITIAL_CAPACITY];
+    private int[] firstNames = new int[INITIAL_CAPACITY];
+    private int[] lastNames = new int[INITIAL_CAPACITY];
+    private int[] nextSameName = new int[INITIAL_CAPACITY];
+    private int[] freeRows = new int[16];
+    private int freeCount;
+    private int rowCount;
+    private int size;
+    private int lastNameCount;
+
+    public CompactPersonRepository() {
+        // empty
+    }
+
+    public CompactPersonRepository(Collection<Person> people) {
+        people.forEach(this::add);
+    }
+
+    @Override
+    public Person findByName(NameKey fullName) {
+        lock.readLock().lock();
+        try {
+            int lastKey = names.findKey(fullName.getLastName());
+            int firstKey = names.findKey(fullName.getFirstName());
+            if (lastKey < 0 || firstKey < 0)
+                return null;
+            int row = rowByFullName.get(fullNameKey(lastKey, firstKey));
+            return row == NO_ROW ? null : view(row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Collection<Person> findByLastName(NameKey lastName, Long afterId) {
+        return new AbstractCollection<Person>() {
+            @Override
+            public Iterator<Person> iterator() {
+                return new LastNameIterator(lastName, afterId);
+            }
+
+            @Override
+            public int size() {
+                lock.readLock().lock();
+                try {
+                    RowList rows = rowsByLastName(lastName);
+                    return rows == null ? 0 : rows.countAfter(afterId);
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        };
+    }
+
+    @Override
+    public Collection<Person> findAll() {
+        return new AbstractCollection<Person>() {
+            @Override
+            public Iterator<Person> iterator() {
+                return new RowIterator();
+            }
+
+            @Override
+            public int size() {
+                return CompactPersonRepository.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Person findById(Long id) {
+        if (id == null)
+            return null;
+        lock.readLock().lock();
+        try {
+            int row = rowById.get(id);
+            return row == NO_ROW ? null : view(row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Person add(Person person) {
+        lock.writeLock().lock();
+        try {
+            int lastKey = names.findKey(person.getLastName());
+            int firstKey = names.findKey(person.getFirstName());
+            if (lastKey >= 0 && firstKey >= 0) {
+                int sameName = rowByFullName.get(fullNameKey(lastKey, firstKey));
+                if (sameName != NO_ROW)
+                    return view(sameName);
+            }
+            person.fillId();
+            int sameId = rowById.get(person.getId());
+            if (sameId != NO_ROW)
+                return view(sameId);
+
+            insert(person);
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void restore(Person person) {
+        lock.writeLock().lock();
+        try {
+            if (rowById.get(person.getId()) != NO_ROW)
+                delete(person.getId());
+            insert(person);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public PersonChange updateFirstName(Long id, String firstName, Long expectedVersion) {
+        if (id == null)
+            return null;
+        lock.writeLock().lock();
+        try {
+            int row = rowById.get(id);
+            if (row == NO_ROW)
+                return null;
+            if (expectedVersion != null && versions[row] != expectedVersion)
+                throw new PersonVersionMismatchException("Person with given id has been changed");
+            int previous = firstNames[row];
+            String previousFirstName = names.name(previous);
+            unlinkFullName(row);
+            firstNames[row] = names.intern(firstName);
+            names.release(previous);
+            versions[row]++;
+            linkFullName(row);
+            return new PersonChange(PersonChange.Type.UPDATED, view(row), previousFirstName);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public PersonChange delete(Long id) {
+        if (id == null)
+            return null;
+        lock.writeLock().lock();
+        try {
+            int row = rowById.remove(id);
+            if (row == NO_ROW)
+                return null;
+            Person deleted = view(row);
+            unlinkFullName(row);
+            int lastKey = names.keyOf(lastNames[row]);
+            RowList sameLastName = rowsByLastName[lastKey];
+            sameLastName.remove(row);
+            if (sameLastName.size == 0) {
+                rowsByLastName[lastKey] = null;
+                lastNameCount--;
+            }
+            names.release(firstNames[row]);
+            names.release(lastNames[row]);
+            if (freeCount == freeRows.length)
+                freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+            freeRows[freeCount++] = row;
+            size--;
+            return new PersonChange(PersonChange.Type.DELETED, deleted, null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int lastNameCount() {
+        lock.readLock().lock();
+        try {
+            return lastNameCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int fullNameCount() {
+        lock.readLock().lock();
+        try {
+            return rowByFullName.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void insert(Person person) {
+        int row = allocateRow();
+        ids[row] = person.getId();
+        versions[row] = person.getVersion();
+        firstNames[row] = names.intern(person.getFirstName());
+        lastNames[row] = names.intern(person.getLastName());
+        rowById.put(ids[row], row);
+        linkFullName(row);
+        RowList sameLastName = rowsFor(names.keyOf(lastNames[row]));
+        if (sameLastName.size == 0)
+            lastNameCount++;
+        sameLastName.insert(row);
+        size++;
+    }
+
+    private Person view(int row) {
+        return new Person(ids[row], names.name(firstNames[row]), names.name(lastNames[row]), versions[row]);
+    }
+
+    private int allocateRow() {
+        if (freeCount > 0)
+            return freeRows[--freeCount];
+        if (rowCount == ids.length) {
+            int capacity = rowCount + (rowCount >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            firstNames = Arrays.copyOf(firstNames, capacity);
+            lastNames = Arrays.copyOf(lastNames, capacity);
+            nextSameName = Arrays.copyOf(nextSameName, capacity);
+        }
+        return rowCount++;
+    }
+
+    private long fullNameKey(int row) {
+        return fullNameKey(names.keyOf(lastNames[row]), names.keyOf(firstNames[row]));
+    }
+
+    private static long fullNameKey(int lastKey, int firstKey) {
+        return ((long) lastKey << 32) | (firstKey & 0xFFFFFFFFL);
+    }
+
+    private void linkFullName(int row) {
+        long key = fullNameKey(row);
+        int head = rowByFullName.get(key);
+        if (head == NO_ROW || ids[row] < ids[head]) {
+            nextSameName[row] = head;
+            rowByFullName.put(key, row);
+            return;
+        }
+        int previous = head;
+        while (nextSameName[previous] != NO_ROW && ids[nextSameName[previous]] < ids[row])
+            previous = nextSameName[previous];
+        nextSameName[row] = nextSameName[previous];
+        nextSameName[previous] = row;
+    }
+
+    private void unlinkFullName(int row) {
+        long key = fullNameKey(row);
+        int head = rowByFullName.get(key);
+        if (head == row) {
+            if (nextSameName[row] == NO_ROW)
+                rowByFullName.remove(key);
+            else
+                rowByFullName.put(key, nextSameName[row]);
+            return;
+        }
+        int previous = head;
+        while (nextSameName[previous] != row)
+            previous = nextSameName[previous];
+        nextSameName[previous] = nextSameName[row];
+    }
+
+    private RowList rowsByLastName(NameKey lastName) {
+        int key = names.findKey(lastName.getLastName());
+        return key < 0 || key >= rowsByLastName.length ? null : rowsByLastName[key];
+    }
+
+    private RowList rowsFor(int lastKey) {
+        if (lastKey >= rowsByLastName.length)
+            rowsByLastName = Arrays.copyOf(rowsByLastName, Math.max(lastKey + 1, rowsByLastName.length * 2));
+        if (rowsByLastName[lastKey] == null)
+            rowsByLastName[lastKey] = new RowList();
+        return rowsByLastName[lastKey];
+    }
+
+    //Rows sharing a lastName key, sorted by id, in chunks of at most CHUNK_SIZE rows so that adding or removing one
+    //moves no more than a chunk. Element 0 of a chunk is its row count; only a list's single chunk is ever empty.
+    private final class RowList {
+        private int[][] chunks = {new int[5]};
+        private int chunkCount = 1;
+        private int size;
+
+        void insert(int row) {
+            long id = ids[row];
+            int c = chunkFor(id);
+            if (chunks[c][0] == CHUNK_SIZE) {
+                //Ids mostly arrive in order, so a full last chunk is followed by a new one instead of split in two
+                if (c == chunkCount - 1 && id > ids[chunks[c][CHUNK_SIZE]]) {
+                    addChunk(++c, new int[5]);
+                } else {
+                    split(c);
+                    if (id > ids[chunks[c + 1][1]])
+                        c++;
+                }
+            }
+            int[] chunk = chunks[c];
+            int count = chunk[0];
+            if (count + 1 == chunk.length)
+                chunk = chunks[c] = Arrays.copyOf(chunk, Math.min(CHUNK_SIZE + 1, count * 2 + 1));
+            int index = indexAfter(chunk, id);
+            System.arraycopy(chunk, index, chunk, index + 1, count + 1 - index);
+            chunk[index] = row;
+            chunk[0] = count + 1;
+            size++;
+        }
+
+        void remove(int row) {
+            long id = ids[row];
+            int c = chunkFor(id);
+            int[] chunk = chunks[c];
+            int count = chunk[0];
+            int index = indexAfter(chunk, id) - 1;
+            System.arraycopy(chunk, index + 1, chunk, index, count - index);
+            chunk[0] = --count;
+            size--;
+            if (count == 0 && chunkCount > 1)
+                removeChunk(c);
+            else if (c + 1 < chunkCount && count + chunks[c + 1][0] <= CHUNK_SIZE / 2)
+                merge(c);
+            else if (c > 0 && count + chunks[c - 1][0] <= CHUNK_SIZE / 2)
+                merge(c - 1);
+        }
+
+        //Rows with an id greater than afterId; counts the chunks before afterId's, so paging deep into a common
+        //lastName costs one step per chunk
+        int countAfter(Long afterId) {
+            if (afterId == null)
+                return size;
+            int c = chunkFor(afterId);
+            int before = indexAfter(chunks[c], afterId) - 1;
+            for (int i = 0; i < c; i++)
+                before += chunks[i][0];
+            return size - before;
+        }
+
+        /**
+         * Views the rows with an id greater than afterId, in id order, until the batch is full.
+         *
+         * @return the number of people put in the batch
+         */
+        int viewAfter(Long afterId, Person[] batch) {
+            int c = afterId == null ? 0 : chunkFor(afterId);
+            int index = afterId == null ? 1 : indexAfter(chunks[c], afterId);
+            int count = 0;
+            for (; c < chunkCount && count < batch.length; c++, index = 1) {
+                int[] chunk = chunks[c];
+                for (; index <= chunk[0] && count < batch.length; index++)
+                    batch[count++] = view(chunk[index]);
+            }
+            return count;
+        }
+
+        //The last chunk whose first id is at most id, or the first chunk
+        private int chunkFor(long id) {
+            int low = 1;
+            int high = chunkCount;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (ids[chunks[middle][1]] <= id)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low - 1;
+        }
+
+        //First index of the chunk whose id is greater than id, or one past its last row
+        private int indexAfter(int[] chunk, long id) {
+            int low = 1;
+            int high = chunk[0] + 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (ids[chunk[middle]] <= id)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+
+        private void split(int c) {
+            int[] chunk = chunks[c];
+            int half = CHUNK_SIZE / 2;
+            int[] upper = new int[CHUNK_SIZE + 1];
+            System.arraycopy(chunk, half + 1, upper, 1, CHUNK_SIZE - half);
+            upper[0] = CHUNK_SIZE - half;
+            chunk[0] = half;
+            addChunk(c + 1, upper);
+        }
+
+        //Appends the next chunk's rows to chunk c and drops the next chunk
+        private void merge(int c) {
+            int[] chunk = chunks[c];
+            int[] next = chunks[c + 1];
+            int count = chunk[0] + next[0];
+            if (count + 1 > chunk.length)
+                chunk = chunks[c] = Arrays.copyOf(chunk, count + 1);
+            System.arraycopy(next, 1, chunk, chunk[0] + 1, next[0]);
+            chunk[0] = count;
+            removeChunk(c + 1);
+        }
+
+        private void addChunk(int c, int[] chunk) {
+            if (chunkCount == chunks.length)
+                chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            System.arraycopy(chunks, c, chunks, c + 1, chunkCount - c);
+            chunks[c] = chunk;
+            chunkCount++;
+        }
+
+        private void removeChunk(int c) {
+            System.arraycopy(chunks, c + 1, chunks, c, chunkCount - c - 1);
+            chunks[--chunkCount] = null;
+        }
+    }
+
+    //Scans the row columns in batches under the read lock, skipping free rows. A row reused after the scan
+    //passed it is missed, like any write made after a weakly consistent iterator got there.
+    private final class RowIterator implements Iterator<Person> {
+        private final Person[] batch = new Person[VIEW_BATCH];
+        private int nextRow;
+        private int position;
+        private int count;
+
+        @Override
+        public boolean hasNext() {
+            if (position < count)
+                return true;
+            fetch();
+            return count > 0;
+        }
+
+        @Override
+        public Person next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return batch[position++];
+        }
+
+        private void fetch() {
+            position = 0;
+            count = 0;
+            lock.readLock().lock();
+            try {
+                while (count < VIEW_BATCH && nextRow < rowCount) {
+                    int row = nextRow++;
+                    if (rowById.get(ids[row]) == row)
+                        batch[count++] = view(row);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    //Copies rows out in batches under the read lock, resuming after the last returned id, so iterating a huge
+    //surname never holds the lock for long and sees concurrent writes like the other repositories' live views do
+    private final class LastNameIterator implements Iterator<Person> {
+        private final NameKey lastName;
+        //Sized by the first fetch to at most the rows there were, which fills it unless it is also the last
+        private Person[] batch;
+        private Long afterId;
+        private int position;
+        private int count;
+        private boolean exhausted;
+
+        LastNameIterator(NameKey lastName, Long afterId) {
+            this.lastName = lastName;
+            this.afterId = afterId;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position < count)
+                return true;
+            if (exhausted)
+                return false;
+            fetch();
+            return count > 0;
+        }
+
+        @Override
+        public Person next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return batch[position++];
+        }
+
+        private void fetch() {
+            lock.readLock().lock();
+            try {
+                RowList rows = rowsByLastName(lastName);
+                if (batch == null)
+                    batch = new Person[rows == null ? 0 : Math.min(VIEW_BATCH, rows.size)];
+                count = rows == null ? 0 : rows.viewAfter(afterId, batch);
+            } finally {
+                lock.readLock().unlock();
+            }
+            position = 0;
+            exhausted = count < VIEW_BATCH;
+            if (count > 0)
+                afterId = batch[count - 1].getId();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import uk.co.huntersix.spring.rest.Exception.PersonVersionMismatchException;
+import uk.co.huntersix.spring.rest.model.NameKey;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.model.PersonChange;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory person store with a primary index on id and case-insensitive secondary indexes on
+ * lastName and (lastName, firstName), so lookups, updates and deletes don't scan the whole data set. The name indexes
+ * are keyed by {@link NameKey}, so a lookup folds nothing and allocates only its key.
+ * <p>
+ * Reads are lock-free. Writes lock one of a fixed set of stripes chosen by the lastName key, so writes to
+ * people with different surnames don't block each other while the duplicate check in {@link #add(Person)}
+ * stays atomic with the insert.
+ */
+public class InMemoryPersonRepository implements PersonRepository {
+    private static final int LOCK_STRIPES = 64;
+
+    private final ConcurrentMap<Long, Person> byId = new ConcurrentHashMap<>();
+    private final ConcurrentMap<NameKey, ConcurrentNavigableMap<Long, Person>> byLastName = new ConcurrentHashMap<>();
+    private final ConcurrentMap<NameKey, ConcurrentNavigableMap<Long, Person>> byFullName = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public InMemoryPersonRepository() {
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = new Object();
+    }
+
+    public InMemoryPersonRepository(Collection<Person> people) {
+        this();
+        people.forEach(this::add);
+    }
+
+    @Override
+    public Person findByName(NameKey fullName) {
+        Map.Entry<Long, Person> first = firstEntry(byFullName.get(fullName));
+        return first == null ? null : first.getValue();
+    }
+
+    @Override
+    public Collection<Person> findByLastName(NameKey lastName, Long afterId) {
+        ConcurrentNavigableMap<Long, Person> people = byLastName.get(lastName);
+        if (people == null)
+            return Collections.emptyList();
+        if (afterId != null)
+            people = people.tailMap(afterId, false);
+        return Collections.unmodifiableCollection(people.values());
+    }
+
+    @Override
+    public Person findById(Long id) {
+        return id == null ? null : byId.get(id);
+    }
+
+    @Override
+    public Collection<Person> findAll() {
+        return Collections.unmodifiableCollection(byId.values());
+    }
+
+    @Override
+    public Person add(Person person) {
+        NameKey fullNameKey = NameKey.of(person.getLastName(), person.getFirstName());
+        NameKey lastNameKey = fullNameKey.lastNameKey();
+        synchronized (lockFor(lastNameKey)) {
+            Map.Entry<Long, Person> sameName = firstEntry(byFullName.get(fullNameKey));
+            if (sameName != null)
+                return sameName.getValue();
+            person.fillId();
+            Person sameId = byId.putIfAbsent(person.getId(), person);
+            if (sameId != null)
+                return sameId;
+            index(byLastName, lastNameKey, person);
+            index(byFullName, fullNameKey, person);
+            return null;
+        }
+    }
+
+    @Override
+    public PersonChange updateFirstName(Long id, String firstName, Long expectedVersion) {
+        Person person = findById(id);
+        if (person == null)
+            return null;
+        synchronized (lockFor(NameKey.of(person.getLastName()))) {
+            if (byId.get(id) != person)
+                return null;
+            if (expectedVersion != null && person.getVersion() != expectedVersion)
+                throw new PersonVersionMismatchException("Person with given id has been changed");
+            String previousFirstName = person.getFirstName();
+            unindex(byFullName, NameKey.of(person.getLastName(), previousFirstName), person);
+            person.rename(firstName);
+            index(byFullName, NameKey.of(person.getLastName(), person.getFirstName()), person);
+            return new PersonChange(PersonChange.Type.UPDATED, person, previousFirstName);
+        }
+    }
+
+    @Override
+    public PersonChange delete(Long id) {
+        Person person = findById(id);
+        if (person == null)
+            return null;
+        NameKey fullNameKey = NameKey.of(person.getLastName(), person.getFirstName());
+        NameKey lastNameKey = fullNameKey.lastNameKey();
+        synchronized (lockFor(lastNameKey)) {
+            if (!byId.remove(id, person))
+                return null;
+            unindex(byLastName, lastNameKey, person);
+            unindex(byFullName, fullNameKey, person);
+            return new PersonChange(PersonChange.Type.DELETED, person, null);
+        }
+    }
+
+    @Override
+    public void restore(Person person) {
+        delete(person.getId());
+        NameKey fullNameKey = NameKey.of(person.getLastName(), person.getFirstName());
+        NameKey lastNameKey = fullNameKey.lastNameKey();
+        synchronized (lockFor(lastNameKey)) {
+            byId.put(person.getId(), person);
+            index(byLastName, lastNameKey, person);
+            index(byFullName, fullNameKey, person);
+        }
+    }
+
+    @Override
+    public int size() {
+        return byId.size();
+    }
+
+    @Override
+    public int lastNameCount() {
+        return byLastName.size();
+    }
+
+    @Override
+    public int fullNameCount() {
+        return byFullName.size();
+    }
+
+    private Object lockFor(NameKey lastNameKey) {
+        int hash = lastNameKey.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    private static Map.Entry<Long, Person> firstEntry(ConcurrentNavigableMap<Long, Person> people) {
+        return people == null ? null : people.firstEntry();
+    }
+
+    //Callers hold the stripe lock of the key's lastName, so an empty bucket can't be refilled while it is removed
+    private static void index(ConcurrentMap<NameKey, ConcurrentNavigableMap<Long, Person>> index, NameKey key, Person person) {
+        index.computeIfAbsent(key, k -> new ConcurrentSkipListMap<>()).put(person.getId(), person);
+    }
+
+    private static void unindex(ConcurrentMap<NameKey, ConcurrentNavigableMap<Long, Person>> index, NameKey key, Person person) {
+        ConcurrentNavigableMap<Long, Person> people = index.get(key);
+        if (people == null)
+            return;
+        people.remove(person.getId(), person);
+        if (people.isEmpty())
+            index.remove(key, people);
+    }
+}
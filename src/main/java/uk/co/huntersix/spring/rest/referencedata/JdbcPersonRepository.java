@@ -0,0 +1,489 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import uk.co.huntersix.spring.rest.Exception.PersonVersionMismatchException;
+import uk.co.huntersix.spring.rest.model.NameKey;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.model.PersonChange;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Person store in a database reached through a connection pool, so the data set is bounded by disk instead of heap
+ * and outlives the process. Written against an embedded H2 database: the id is the primary key, and case-folded
+ * copies of the names (see {@link NameKey#fold(String)}) are indexed together with the id, so name lookups and
+ * id-ordered lastName pages are index range scans.
+ * <p>
+ * As in InMemoryPersonRepository, adding checks the name and inserts under the stripe lock of the lastName, which
+ * makes the check atomic for everyone writing through this instance. A person without an id takes one only once its
+ * name has been found free. {@link #addAll(List)} inserts a batch with one prepared statement and one commit.
+ * Updates and deletes lock the row they change. Every read returns copies.
+ * <p>
+ * {@link #size()}, {@link #lastNameCount()} and {@link #fullNameCount()} scan the table, so they are counted together
+ * and reused for a few seconds; metrics scrapes ask for all three every time.
+ */
+public class JdbcPersonRepository implements PersonRepository {
+    private static final int LOCK_STRIPES = 64;
+    private static final int VIEW_BATCH = 256;
+    private static final String DUPLICATE_KEY = "23505";
+    private static final long COUNTS_TTL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS person (id BIGINT PRIMARY KEY, first_name VARCHAR, last_name VARCHAR, "
+                    + "first_key VARCHAR NOT NULL, last_key VARCHAR NOT NULL, version BIGINT NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS person_full_name ON person (last_key, first_key, id)",
+            "CREATE INDEX IF NOT EXISTS person_last_name ON person (last_key, id)"
+    };
+    private static final String COLUMNS = "SELECT id, first_name, last_name, version FROM person ";
+    //Inserts nothing when the id or the name is taken, which the update count tells
+    private static final String INSERT = "INSERT INTO person (id, first_name, last_name, first_key, last_key, version) "
+            + "SELECT ?, ?, ?, ?, ?, ? FROM DUAL WHERE NOT EXISTS (SELECT 1 FROM person WHERE id = ?) "
+            + "AND NOT EXISTS (SELECT 1 FROM person WHERE last_key = ? AND first_key = ?)";
+    private static final String NAME_TAKEN = "SELECT 1 FROM person WHERE last_key = ? AND first_key = ? LIMIT 1";
+    private static final String MERGE = "MERGE INTO person (id, first_name, last_name, first_key, last_key, version) "
+            + "KEY (id) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final DataSource dataSource;
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final long countsTtlNanos;
+    private final Object countsLock = new Object();
+    private volatile Counts counts;
+
+    public JdbcPersonRepository(DataSource dataSource) {
+        this(dataSource, COUNTS_TTL_NANOS);
+    }
+
+    JdbcPersonRepository(DataSource dataSource, long countsTtlNanos) {
+        this.dataSource = dataSource;
+        this.countsTtlNanos = countsTtlNanos;
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = new ReentrantLock();
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            for (String ddl : SCHEMA)
+                statement.execute(ddl);
+            try (ResultSet maxId = statement.executeQuery("SELECT MAX(id) FROM person")) {
+                maxId.next();
+                //Ids stored by an earlier run must never be handed out again
+                Person.reserveIds(maxId.getLong(1));
+            }
+        } catch (SQLException ex) {
+            throw failed(ex);
+        }
+    }
+
+    @Override
+    public Person findByName(NameKey fullName) {
+        List<Person> people = query(COLUMNS + "WHERE last_key = ? AND first_key = ? ORDER BY id LIMIT 1",
+                lastKey(fullName), firstKey(fullName.getFirstName()));
+        return people.isEmpty() ? null : people.get(0);
+    }
+
+    @Override
+    public Collection<Person> findByLastName(NameKey lastName, Long afterId) {
+        String lastKey = lastKey(lastName);
+        long after = afterId == null ? Long.MIN_VALUE : afterId;
+        return new AbstractCollection<Person>() {
+            @Override
+            public Iterator<Person> iterator() {
+                return new PageIterator(lastKey, after);
+            }
+
+            @Override
+            public int size() {
+                return (int) count("SELECT COUNT(*) FROM person WHERE last_key = ? AND id > ?", lastKey, after);
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return !iterator().hasNext();
+            }
+
+            //Copying, e.g. into an ArrayList, would otherwise count the rows before reading them
+            @Override
+            public Object[] toArray() {
+                List<Person> people = new ArrayList<>();
+                iterator().forEachRemaining(people::add);
+                return people.toArray();
+            }
+        };
+    }
+
+    @Override
+    public Person findById(Long id) {
+        if (id == null)
+            return null;
+        List<Person> people = query(COLUMNS + "WHERE id = ?", id);
+        return people.isEmpty() ? null : people.get(0);
+    }
+
+    @Override
+    public Collection<Person> findAll() {
+        return new AbstractCollection<Person>() {
+            @Override
+            public Iterator<Person> iterator() {
+                return new PageIterator(null, Long.MIN_VALUE);
+            }
+
+            @Override
+            public int size() {
+                return (int) count("SELECT COUNT(*) FROM person");
+            }
+        };
+    }
+
+    //As in the other stores, a person without an id takes one only once its name is known to be free, so a duplicate
+    //uses none up
+    @Override
+    public Person add(Person person) {
+        ReentrantLock lock = lockFor(lastKey(person.getLastName()));
+        lock.lock();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement insert = connection.prepareStatement(INSERT)) {
+            if (person.getId() == null) {
+                try (PreparedStatement sameName = connection.prepareStatement(NAME_TAKEN)) {
+                    if (nameTaken(sameName, person))
+                        return existing(person);
+                }
+                person.fillId();
+            }
+            bindInsert(insert, person);
+            if (insert.executeUpdate() > 0)
+                return null;
+        } catch (SQLException ex) {
+            //The same id added under another lastName's lock at the same time
+            if (!DUPLICATE_KEY.equals(ex.getSQLState()))
+                throw failed(ex);
+        } finally {
+            lock.unlock();
+        }
+        return existing(person);
+    }
+
+    //Takes every stripe, in order, so the batch can't race with single adds of any name. A person without an id is
+    //checked against the rows stored so far, the batch's own included, before it takes an id.
+    @Override
+    public List<Person> addAll(List<Person> people) {
+        for (ReentrantLock lock : locks)
+            lock.lock();
+        try {
+            int[] inserted = transaction(connection -> {
+                int[] counts = new int[people.size()];
+                try (PreparedStatement insert = connection.prepareStatement(INSERT);
+                     PreparedStatement sameName = connection.prepareStatement(NAME_TAKEN)) {
+                    List<Integer> batched = new ArrayList<>();
+                    Set<NameKey> batchedNames = new HashSet<>();
+                    for (int i = 0; i < people.size(); i++) {
+                        Person person = people.get(i);
+                        NameKey name = NameKey.of(person.getLastName(), person.getFirstName());
+                        if (person.getId() == null) {
+                            //The same name earlier in the batch is only visible once it has been executed
+                            if (batchedNames.contains(name)) {
+                                executeBatch(insert, batched, counts);
+                                batchedNames.clear();
+                            }
+                            if (nameTaken(sameName, person))
+                                continue;
+                            person.fillId();
+                        }
+                        bindInsert(insert, person);
+                        insert.addBatch();
+                        batched.add(i);
+                        batchedNames.add(name);
+                    }
+                    executeBatch(insert, batched, counts);
+                }
+                return counts;
+            });
+            List<Person> existing = new ArrayList<>(people.size());
+            for (int i = 0; i < people.size(); i++)
+                existing.add(inserted[i] > 0 ? null : existing(people.get(i)));
+            return existing;
+        } finally {
+            for (ReentrantLock lock : locks)
+                lock.unlock();
+        }
+    }
+
+    @Override
+    public PersonChange updateFirstName(Long id, String firstName, Long expectedVersion) {
+        if (id == null)
+            return null;
+        return transaction(connection -> {
+            Person person = lockRow(connection, id);
+            if (person == null)
+                return null;
+            if (expectedVersion != null && person.getVersion() != expectedVersion)
+                throw new PersonVersionMismatchException("Person with given id has been changed");
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE person SET first_name = ?, first_key = ?, version = ? WHERE id = ?")) {
+                update.setString(1, firstName);
+                update.setString(2, firstKey(firstName));
+                update.setLong(3, person.getVersion() + 1);
+                update.setLong(4, id);
+                update.executeUpdate();
+            }
+            String previousFirstName = person.getFirstName();
+            person.rename(firstName);
+            return new PersonChange(PersonChange.Type.UPDATED, person, previousFirstName);
+        });
+    }
+
+    @Override
+    public PersonChange delete(Long id) {
+        if (id == null)
+            return null;
+        return transaction(connection -> {
+            Person person = lockRow(connection, id);
+            if (person == null)
+                return null;
+            try (PreparedStatement delete = connection.prepareStatement("DELETE FROM person WHERE id = ?")) {
+                delete.setLong(1, id);
+                delete.executeUpdate();
+            }
+            return new PersonChange(PersonChange.Type.DELETED, person, null);
+        });
+    }
+
+    @Override
+    public void restore(Person person) {
+        ReentrantLock lock = lockFor(lastKey(person.getLastName()));
+        lock.lock();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement merge = connection.prepareStatement(MERGE)) {
+            bindPerson(merge, person);
+            merge.executeUpdate();
+        } catch (SQLException ex) {
+            throw failed(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return counts().size;
+    }
+
+    @Override
+    public int lastNameCount() {
+        return counts().lastNames;
+    }
+
+    @Override
+    public int fullNameCount() {
+        return counts().fullNames;
+    }
+
+    //Callers arriving while the counts are stale wait for one recount rather than each scanning the table
+    private Counts counts() {
+        Counts current = counts;
+        if (current != null && System.nanoTime() - current.counted < countsTtlNanos)
+            return current;
+        synchronized (countsLock) {
+            current = counts;
+            if (current == null || System.nanoTime() - current.counted >= countsTtlNanos) {
+                current = new Counts(System.nanoTime(), (int) count("SELECT COUNT(*) FROM person"),
+                        (int) count("SELECT COUNT(DISTINCT last_key) FROM person"),
+                        (int) count("SELECT COUNT(*) FROM (SELECT DISTINCT last_key, first_key FROM person)"));
+                counts = current;
+            }
+            return current;
+        }
+    }
+
+    private Person existing(Person person) {
+        Person sameName = findByName(NameKey.of(person.getLastName(), person.getFirstName()));
+        return sameName != null ? sameName : findById(person.getId());
+    }
+
+    private ReentrantLock lockFor(String lastKey) {
+        int hash = lastKey.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    private static Person lockRow(Connection connection, Long id) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(COLUMNS + "WHERE id = ? FOR UPDATE")) {
+            select.setLong(1, id);
+            try (ResultSet row = select.executeQuery()) {
+                return row.next() ? person(row) : null;
+            }
+        }
+    }
+
+    //Runs the statements batched so far, recording each one's update count at its person's index
+    private static void executeBatch(PreparedStatement insert, List<Integer> batched, int[] counts)
+            throws SQLException {
+        if (batched.isEmpty())
+            return;
+        int[] executed = insert.executeBatch();
+        for (int i = 0; i < executed.length; i++)
+            counts[batched.get(i)] = executed[i];
+        batched.clear();
+    }
+
+    private static boolean nameTaken(PreparedStatement sameName, Person person) throws SQLException {
+        sameName.setString(1, lastKey(person.getLastName()));
+        sameName.setString(2, firstKey(person.getFirstName()));
+        try (ResultSet row = sameName.executeQuery()) {
+            return row.next();
+        }
+    }
+
+    private static void bindInsert(PreparedStatement insert, Person person) throws SQLException {
+        bindPerson(insert, person);
+        insert.setLong(7, person.getId());
+        insert.setString(8, lastKey(person.getLastName()));
+        insert.setString(9, firstKey(person.getFirstName()));
+    }
+
+    private static void bindPerson(PreparedStatement statement, Person person) throws SQLException {
+        statement.setLong(1, person.getId());
+        statement.setString(2, person.getFirstName());
+        statement.setString(3, person.getLastName());
+        statement.setString(4, firstKey(person.getFirstName()));
+        statement.setString(5, lastKey(person.getLastName()));
+        statement.setLong(6, person.getVersion());
+    }
+
+    //Keyed like NameKey, which treats a null name as an empty one
+    private static String lastKey(NameKey key) {
+        return lastKey(key.getLastName());
+    }
+
+    private static String lastKey(String lastName) {
+        return lastName == null ? "" : NameKey.fold(lastName);
+    }
+
+    private static String firstKey(String firstName) {
+        return firstName == null ? "" : NameKey.fold(firstName);
+    }
+
+    private static Person person(ResultSet row) throws SQLException {
+        return new Person(row.getLong(1), row.getString(2), row.getString(3), row.getLong(4));
+    }
+
+    private List<Person> query(String sql, Object... parameters) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement select = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++)
+                select.setObject(i + 1, parameters[i]);
+            try (ResultSet rows = select.executeQuery()) {
+                if (!rows.next())
+                    return Collections.emptyList();
+                List<Person> people = new ArrayList<>();
+                do {
+                    people.add(person(rows));
+                } while (rows.next());
+                return people;
+            }
+        } catch (SQLException ex) {
+            throw failed(ex);
+        }
+    }
+
+    private long count(String sql, Object... parameters) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement select = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++)
+                select.setObject(i + 1, parameters[i]);
+            try (ResultSet rows = select.executeQuery()) {
+                rows.next();
+                return rows.getLong(1);
+            }
+        } catch (SQLException ex) {
+            throw failed(ex);
+        }
+    }
+
+    //Commits what work did, or rolls it all back when it throws
+    private <T> T transaction(SqlWork<T> work) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                T result = work.apply(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException ex) {
+                connection.rollback();
+                throw ex;
+            }
+        } catch (SQLException ex) {
+            throw failed(ex);
+        }
+    }
+
+    private static IllegalStateException failed(SQLException ex) {
+        return new IllegalStateException("Person database access failed: " + ex.getMessage(), ex);
+    }
+
+    private static final class Counts {
+        private final long counted;
+        private final int size;
+        private final int lastNames;
+        private final int fullNames;
+
+        Counts(long counted, int size, int lastNames, int fullNames) {
+            this.counted = counted;
+            this.size = size;
+            this.lastNames = lastNames;
+            this.fullNames = fullNames;
+        }
+    }
+
+    private interface SqlWork<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    //Reads a lastName, or everyone when lastKey is null, a page of rows at a time in id order
+    private final class PageIterator implements Iterator<Person> {
+        private final String lastKey;
+        private long afterId;
+        private List<Person> page = Collections.emptyList();
+        private int position;
+        private boolean lastPage;
+
+        PageIterator(String lastKey, long afterId) {
+            this.lastKey = lastKey;
+            this.afterId = afterId;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position < page.size())
+                return true;
+            if (lastPage)
+                return false;
+            page = lastKey == null
+                    ? query(COLUMNS + "WHERE id > ? ORDER BY id LIMIT " + VIEW_BATCH, afterId)
+                    : query(COLUMNS + "WHERE last_key = ? AND id > ? ORDER BY id LIMIT " + VIEW_BATCH, lastKey, afterId);
+            position = 0;
+            lastPage = page.size() < VIEW_BATCH;
+            if (!page.isEmpty())
+                afterId = page.get(page.size() - 1).getId();
+            return !page.isEmpty();
+        }
+
+        @Override
+        public Person next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return page.get(position++);
+        }
+    }
+}
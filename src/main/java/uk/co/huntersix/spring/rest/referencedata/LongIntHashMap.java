@@ -0,0 +1,95 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+/**
+ * Open addressing long to int map with linear probing, so neither keys nor values are boxed.
+ * Values must be non-negative. Not thread-safe.
+ */
+final class LongIntHashMap {
+    static final int NO_VALUE = -1;
+
+    private long[] keys;
+    //Value + 1, so that 0 marks a free slot
+    private int[] values;
+    private int mask;
+    private int size;
+
+    LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize) * 2 - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    int get(long key) {
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            if (values[slot] == 0)
+                return NO_VALUE;
+            if (keys[slot] == key)
+                return values[slot] - 1;
+        }
+    }
+
+    void put(long key, int value) {
+        if ((size + 1) * 4L > values.length * 3L)
+            resize(values.length * 2);
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            if (values[slot] == 0) {
+                keys[slot] = key;
+                values[slot] = value + 1;
+                size++;
+                return;
+            }
+            if (keys[slot] == key) {
+                values[slot] = value + 1;
+                return;
+            }
+        }
+    }
+
+    int remove(long key) {
+        int slot = slot(key);
+        while (true) {
+            if (values[slot] == 0)
+                return NO_VALUE;
+            if (keys[slot] == key)
+                break;
+            slot = (slot + 1) & mask;
+        }
+        int removed = values[slot] - 1;
+        //Backward shift deletion: pull later entries of the probe sequence into the gap instead of leaving tombstones
+        int gap = slot;
+        for (int next = (gap + 1) & mask; values[next] != 0; next = (next + 1) & mask) {
+            int ideal = slot(keys[next]);
+            if (((next - ideal) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        values[gap] = 0;
+        size--;
+        return removed;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != 0)
+                put(oldKeys[i], oldValues[i] - 1);
+        }
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
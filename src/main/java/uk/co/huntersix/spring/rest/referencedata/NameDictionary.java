@@ -0,0 +1,191 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import uk.co.huntersix.spring.rest.model.NameKey;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Dictionary encoding of names: every distinct name is stored once and referred to by an int code, and each code maps
+ * to the code of its case-folded key so names differing only in case share a key. Both kinds of code are dense, so
+ * they can index arrays.
+ * <p>
+ * Keys are found through one open addressing table of key codes with linear probing, compared ignoring case; the
+ * names of a key, usually one, are chained from it. A name's code is counted in use once per intern and freed, with
+ * its key once the key has no names left, when the last use is released. Freed codes are reused.
+ * Not thread-safe.
+ */
+final class NameDictionary {
+    private static final int NO_CODE = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    //By name code; the next code of a free name is kept in nextName
+    private String[] names = new String[INITIAL_CAPACITY];
+    private int[] keys = new int[INITIAL_CAPACITY];
+    private int[] uses = new int[INITIAL_CAPACITY];
+    private int[] nextName = new int[INITIAL_CAPACITY];
+    //By key code; the next code of a free key is kept in firstName
+    private int[] firstName = new int[INITIAL_CAPACITY];
+    private int[] keyHashes = new int[INITIAL_CAPACITY];
+    //Key code + 1, so that 0 marks a free slot
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private int mask = slots.length - 1;
+    private int nameCount;
+    private int keyCount;
+    private int freeName = NO_CODE;
+    private int freeKey = NO_CODE;
+    private int liveKeys;
+
+    /**
+     * @return the code of the name, counting one more use of it
+     */
+    int intern(String name) {
+        int hash = NameKey.hash(keyName(name));
+        int slot = slot(name, hash);
+        int key = slots[slot] - 1;
+        if (key >= 0) {
+            for (int code = firstName[key]; code != NO_CODE; code = nextName[code]) {
+                if (Objects.equals(names[code], name)) {
+                    uses[code]++;
+                    return code;
+                }
+            }
+        } else {
+            key = allocateKey();
+            keyHashes[key] = hash;
+            firstName[key] = NO_CODE;
+            slots[slot] = key + 1;
+            if (++liveKeys * 4L > slots.length * 3L)
+                resize(slots.length * 2);
+        }
+        int code = allocateName();
+        names[code] = name;
+        keys[code] = key;
+        uses[code] = 1;
+        nextName[code] = firstName[key];
+        firstName[key] = code;
+        return code;
+    }
+
+    /**
+     * Counts one use of the code fewer, freeing the name when it was the last.
+     */
+    void release(int code) {
+        if (--uses[code] > 0)
+            return;
+        int key = keys[code];
+        if (firstName[key] == code) {
+            firstName[key] = nextName[code];
+        } else {
+            int previous = firstName[key];
+            while (nextName[previous] != code)
+                previous = nextName[previous];
+            nextName[previous] = nextName[code];
+        }
+        names[code] = null;
+        nextName[code] = freeName;
+        freeName = code;
+        if (firstName[key] == NO_CODE)
+            removeKey(key);
+    }
+
+    String name(int code) {
+        return names[code];
+    }
+
+    int keyOf(int code) {
+        return keys[code];
+    }
+
+    /**
+     * @return the key code names equal to the given one ignoring case share, or -1 when no such name is in use
+     */
+    int findKey(String name) {
+        return slots[slot(name, NameKey.hash(keyName(name)))] - 1;
+    }
+
+    int keyCount() {
+        return liveKeys;
+    }
+
+    //The slot holding the name's key, or the free slot where it would go
+    private int slot(String name, int hash) {
+        String folded = keyName(name);
+        for (int slot = slotOf(hash); ; slot = (slot + 1) & mask) {
+            int key = slots[slot] - 1;
+            if (key < 0 || keyHashes[key] == hash && folded.equalsIgnoreCase(keyName(names[firstName[key]])))
+                return slot;
+        }
+    }
+
+    private int allocateName() {
+        if (freeName != NO_CODE) {
+            int code = freeName;
+            freeName = nextName[code];
+            return code;
+        }
+        if (nameCount == names.length) {
+            names = Arrays.copyOf(names, nameCount * 2);
+            keys = Arrays.copyOf(keys, nameCount * 2);
+            uses = Arrays.copyOf(uses, nameCount * 2);
+            nextName = Arrays.copyOf(nextName, nameCount * 2);
+        }
+        return nameCount++;
+    }
+
+    private int allocateKey() {
+        if (freeKey != NO_CODE) {
+            int key = freeKey;
+            freeKey = firstName[key];
+            return key;
+        }
+        if (keyCount == firstName.length) {
+            firstName = Arrays.copyOf(firstName, keyCount * 2);
+            keyHashes = Arrays.copyOf(keyHashes, keyCount * 2);
+        }
+        return keyCount++;
+    }
+
+    private void removeKey(int key) {
+        int slot = slotOf(keyHashes[key]);
+        while (slots[slot] != key + 1)
+            slot = (slot + 1) & mask;
+        //Backward shift deletion, as in LongIntHashMap
+        int gap = slot;
+        for (int next = (gap + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            int ideal = slotOf(keyHashes[slots[next] - 1]);
+            if (((next - ideal) & mask) >= ((next - gap) & mask)) {
+                slots[gap] = slots[next];
+                gap = next;
+            }
+        }
+        slots[gap] = 0;
+        firstName[key] = freeKey;
+        freeKey = key;
+        liveKeys--;
+    }
+
+    private void resize(int capacity) {
+        int[] oldSlots = slots;
+        slots = new int[capacity];
+        mask = capacity - 1;
+        for (int entry : oldSlots) {
+            if (entry == 0)
+                continue;
+            int slot = slotOf(keyHashes[entry - 1]);
+            while (slots[slot] != 0)
+                slot = (slot + 1) & mask;
+            slots[slot] = entry;
+        }
+    }
+
+    private int slotOf(int hash) {
+        int mixed = hash * 0x9E3779B9;
+        return (mixed ^ (mixed >>> 16)) & mask;
+    }
+
+    //Keyed like NameKey, which treats a null name as an empty one
+    private static String keyName(String name) {
+        return name == null ? "" : name;
+    }
+}
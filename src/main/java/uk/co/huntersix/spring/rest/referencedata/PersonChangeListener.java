@@ -0,0 +1,32 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import uk.co.huntersix.spring.rest.model.PersonChange;
+
+/**
+ * Beans implementing this are told about every person PersonDataService adds, updates or deletes, after the
+ * repository has applied the change and before the caller gets its response.
+ */
+public interface PersonChangeListener {
+
+    /**
+     * Called while PersonDataService holds the lock of the person's id, before the repository applies a change;
+     * throwing refuses the change, e.g. when it could not be made durable. Must not block.
+     */
+    default void beforeChange() {
+        // every change is accepted
+    }
+
+    /**
+     * Called while PersonDataService holds the lock of the changed person's id, so the changes of one person arrive
+     * in the order they were applied. Must not block.
+     */
+    void personChanged(PersonChange change);
+
+    /**
+     * Called on the writing thread, outside any lock, once the changes it published for a request have all been
+     * passed to {@link #personChanged(PersonChange)}; may block, e.g. until they are durable.
+     */
+    default void changesPublished() {
+        // nothing to wait for
+    }
+}
@@ -0,0 +1,102 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.co.huntersix.spring.rest.Exception.ChangesExpiredException;
+import uk.co.huntersix.spring.rest.model.PersonChange;
+import uk.co.huntersix.spring.rest.model.PersonChangeEvent;
+import uk.co.huntersix.spring.rest.model.PersonChangePage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The changes published by PersonDataService, numbered 1, 2, 3... in the order they were applied, for followers to
+ * tail. The latest capacity changes are kept in memory; a reader further behind gets ChangesExpiredException and
+ * starts again from a snapshot. Each person's changes are numbered in the order they were made, since they are
+ * published under the person's lock.
+ */
+@Component
+public class PersonChangeLog implements PersonChangeListener {
+    //Snapshot response headers: the log the snapshot belongs to and the sequence number to follow it from
+    public static final String LOG_HEADER = "X-Change-Log";
+    public static final String SEQUENCE_HEADER = "X-Change-Sequence";
+
+    private final String id = UUID.randomUUID().toString();
+    private final PersonChangeEvent[] changes;
+    //Held only to number and store a change, so publishing doesn't block
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+
+    //Guarded by lock
+    private long head;
+
+    public PersonChangeLog(@Value("${person.changes.capacity:100000}") int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.changes = new PersonChangeEvent[capacity];
+    }
+
+    @Override
+    public void personChanged(PersonChange change) {
+        long timestamp = System.currentTimeMillis();
+        lock.lock();
+        try {
+            head++;
+            changes[slot(head)] = PersonChangeEvent.of(head, timestamp, change.getType(), change.getPerson());
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public long head() {
+        lock.lock();
+        try {
+            return head;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param waitMillis how long to wait for a change after the given one when there is none yet
+     * @return up to limit changes after the given sequence number, in order
+     * @throws ChangesExpiredException when changes after the given one are no longer kept, or it is not in this log
+     */
+    public PersonChangePage read(long after, int limit, long waitMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        lock.lock();
+        try {
+            if (after > head)
+                throw new ChangesExpiredException("Change " + after + " is not in this log");
+            while (after == head) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return new PersonChangePage(id, head, Collections.emptyList());
+                appended.awaitNanos(remaining);
+            }
+            if (head - after > changes.length)
+                throw new ChangesExpiredException("Changes after " + after + " are no longer kept");
+            List<PersonChangeEvent> page = new ArrayList<>((int) Math.min(limit, head - after));
+            for (long sequence = after + 1; sequence <= head && page.size() < limit; sequence++)
+                page.add(changes[slot(sequence)]);
+            return new PersonChangePage(id, head, page);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % changes.length);
+    }
+}
@@ -0,0 +1,127 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import uk.co.huntersix.spring.rest.model.BlockIdGenerator;
+import uk.co.huntersix.spring.rest.model.IdGenerator;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.model.SequenceIdGenerator;
+import uk.co.huntersix.spring.rest.model.SnowflakeIdGenerator;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+@Configuration
+public class PersonDataConfiguration {
+
+    //Reference data is loaded while the context starts, before the web server accepts requests. With a write-ahead
+    //log the data is recovered from it instead, and only loaded (and snapshotted) when the log is still empty.
+    //A database keeps its people across restarts too, so the data file only seeds an empty one.
+    //The id generator is a parameter only so that it is installed first. A follower copies its people from the leader.
+    @Bean
+    public PersonRepository personRepository(@Value("${person.store.mode:indexed}") String mode,
+                                             @Value("${person.replication.leader-url:}") String leaderUrl,
+                                             IdGenerator personIdGenerator,
+                                             PersonDataLoader personDataLoader,
+                                             ObjectProvider<PersonWriteAheadLog> writeAheadLog,
+                                             ObjectProvider<DataSource> personDataSource) throws IOException {
+        PersonRepository repository;
+        switch (mode) {
+            case "indexed":
+                repository = new InMemoryPersonRepository();
+                break;
+            case "compact":
+                repository = new CompactPersonRepository();
+                break;
+            case "jdbc":
+                repository = new JdbcPersonRepository(personDataSource.getObject());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown person.store.mode: " + mode);
+        }
+        boolean follower = !leaderUrl.isEmpty();
+        PersonWriteAheadLog log = writeAheadLog.getIfAvailable();
+        if (log == null) {
+            if (repository.size() == 0 && !follower)
+                personDataLoader.load(repository);
+        } else if (!log.recover(repository) && !follower) {
+            personDataLoader.load(repository);
+            log.snapshot();
+        }
+        return repository;
+    }
+
+    //Installed before any person is loaded or added, so every new id comes from it
+    @Bean
+    public IdGenerator personIdGenerator(@Value("${person.id.generator:sequence}") String generator,
+                                         @Value("${person.id.block-size:1000}") int blockSize,
+                                         @Value("${person.id.node:0}") int node) {
+        IdGenerator ids;
+        switch (generator) {
+            case "sequence":
+                ids = new SequenceIdGenerator();
+                break;
+            case "block":
+                ids = new BlockIdGenerator(blockSize);
+                break;
+            case "snowflake":
+                ids = new SnowflakeIdGenerator(node);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown person.id.generator: " + generator);
+        }
+        Person.useIdGenerator(ids);
+        return ids;
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnProperty(name = "person.replication.leader-url")
+    public PersonReplicaFollower personReplicaFollower(@Value("${person.replication.leader-url}") String leaderUrl,
+                                                       @Value("${person.replication.poll-wait-ms:10000}") long pollWaitMillis,
+                                                       PersonDataService personDataService,
+                                                       ObjectMapper objectMapper,
+                                                       MeterRegistry meterRegistry) {
+        return new PersonReplicaFollower(leaderUrl, pollWaitMillis, personDataService, objectMapper, meterRegistry);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnProperty(name = "person.write.pipeline.enabled", havingValue = "true")
+    public PersonWritePipeline personWritePipeline(@Value("${person.write.pipeline.capacity:10000}") int capacity,
+                                                   @Value("${person.write.pipeline.batch-size:1000}") int batchSize,
+                                                   PersonDataService personDataService,
+                                                   MeterRegistry meterRegistry) {
+        return new PersonWritePipeline(personDataService, capacity, batchSize, meterRegistry);
+    }
+
+    //Pool metrics are published as hikaricp_connections_* once the actuator binds them
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "person.store.mode", havingValue = "jdbc")
+    public HikariDataSource personDataSource(@Value("${person.jdbc.url:jdbc:h2:file:./person-db/people}") String url,
+                                             @Value("${person.jdbc.username:sa}") String username,
+                                             @Value("${person.jdbc.password:}") String password,
+                                             @Value("${person.jdbc.pool-size:10}") int poolSize) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("person-db");
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(poolSize);
+        return new HikariDataSource(config);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "person.wal.dir")
+    public PersonWriteAheadLog personWriteAheadLog(@Value("${person.wal.dir}") String directory,
+                                                   @Value("${person.wal.sync:true}") boolean sync,
+                                                   @Value("${person.wal.snapshot-interval-seconds:300}") long snapshotIntervalSeconds) {
+        return new PersonWriteAheadLog(Paths.get(directory), sync, snapshotIntervalSeconds);
+    }
+}
@@ -0,0 +1,266 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import uk.co.huntersix.spring.rest.model.Person;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Seeds the repository with reference data from a CSV or NDJSON file.
+ * <p>
+ * CSV lines are {@code id,firstName,lastName} (id may be empty) or {@code firstName,lastName}, without quoting;
+ * a header line is skipped. NDJSON lines are Person documents. Files on the file system are memory-mapped and
+ * parsed in parallel chunks split at line boundaries, the records going into the repository a batch at a time;
+ * other resources (e.g. inside the application jar) are read sequentially.
+ */
+@Component
+public class PersonDataLoader {
+    private static final Logger LOG = LoggerFactory.getLogger(PersonDataLoader.class);
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+    private static final int MAX_CHUNK_SIZE = 1 << 30;
+    private static final long PROGRESS_INTERVAL_SECONDS = 5;
+    private static final int LOAD_BATCH = 1000;
+
+    private final Resource location;
+    private final int parallelism;
+    private final ObjectReader personReader;
+    private final int minChunkSize;
+
+    @Autowired
+    public PersonDataLoader(@Value("${person.data.location:classpath:people.csv}") Resource location,
+                            @Value("${person.data.parallelism:0}") int parallelism,
+                            ObjectMapper objectMapper) {
+        this(location, parallelism, objectMapper, MIN_CHUNK_SIZE);
+    }
+
+    PersonDataLoader(Resource location, int parallelism, ObjectMapper objectMapper, int minChunkSize) {
+        this.location = location;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.personReader = objectMapper.readerFor(Person.class);
+        this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * @return the number of people added; lines naming someone already loaded are skipped
+     */
+    public long load(PersonRepository repository) throws IOException {
+        Progress progress = new Progress();
+        long started = System.nanoTime();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "person-data-loader-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> LOG.info("Loaded {} people from {} so far ({} records/sec)",
+                progress.added.sum(), location.getDescription(), progress.rate(started)),
+                PROGRESS_INTERVAL_SECONDS, PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        try {
+            if (location.isFile()) {
+                loadMapped(location.getFile().toPath(), repository, progress);
+            } else {
+                loadStream(repository, progress);
+            }
+        } finally {
+            reporter.shutdownNow();
+        }
+        //Ids in the file must never be handed out again to people created later
+        Person.reserveIds(progress.maxId.get());
+
+        LOG.info("Loaded {} people from {} in {} ms ({} records/sec, {} duplicates skipped)",
+                progress.added.sum(), location.getDescription(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), progress.rate(started),
+                progress.skipped.sum());
+        return progress.added.sum();
+    }
+
+    private void loadStream(PersonRepository repository, Progress progress) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(location.getInputStream(), StandardCharsets.UTF_8))) {
+            Batch batch = new Batch(repository, progress);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                batch.add(parse(line.trim()));
+            }
+            batch.flush();
+        }
+    }
+
+    private void loadMapped(Path path, PersonRepository repository, Progress progress) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<long[]> chunks = split(channel);
+            if (chunks.isEmpty())
+                return;
+            ExecutorService workers = Executors.newFixedThreadPool(Math.min(parallelism, chunks.size()));
+            try {
+                List<Future<?>> parsed = new ArrayList<>(chunks.size());
+                for (long[] chunk : chunks) {
+                    parsed.add(workers.submit(() -> parseChunk(channel, chunk[0], chunk[1], repository, progress)));
+                }
+                for (Future<?> future : parsed) {
+                    future.get();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading " + path, ex);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof UncheckedIOException)
+                    throw ((UncheckedIOException) ex.getCause()).getCause();
+                throw new IOException("Failed to load " + path, ex.getCause());
+            } finally {
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    //Splits the file into [start, end) ranges that each begin at the start of a line
+    private List<long[]> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(minChunkSize, size / parallelism + 1));
+        List<long[]> chunks = new ArrayList<>();
+        long start = 0;
+        while (start < size) {
+            long end = start + chunkSize >= size ? size : nextLineStart(channel, start + chunkSize, size);
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n')
+                    return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private void parseChunk(FileChannel channel, long start, long end,
+                            PersonRepository repository, Progress progress) {
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            Batch batch = new Batch(repository, progress);
+            byte[] line = new byte[256];
+            int length = 0;
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    batch.add(parse(new String(line, 0, length, StandardCharsets.UTF_8).trim()));
+                    length = 0;
+                } else {
+                    if (length == line.length)
+                        line = Arrays.copyOf(line, length * 2);
+                    line[length++] = b;
+                }
+            }
+            if (length > 0)
+                batch.add(parse(new String(line, 0, length, StandardCharsets.UTF_8).trim()));
+            batch.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Person parse(String line) throws IOException {
+        if (line.isEmpty())
+            return null;
+        if (line.charAt(0) == '{')
+            return personReader.readValue(line);
+
+        //A person without an id in the file gets one from the repository on insert, so none is drawn for a duplicate
+        String[] fields = line.split(",", -1);
+        if (fields.length == 2)
+            return fields[0].equalsIgnoreCase("firstName") ? null : new Person(null, fields[0], fields[1]);
+        if (fields.length != 3)
+            throw malformed(line);
+        if (fields[0].equalsIgnoreCase("id"))
+            return null;
+        try {
+            return new Person(fields[0].isEmpty() ? null : Long.valueOf(fields[0]), fields[1], fields[2]);
+        } catch (NumberFormatException ex) {
+            throw malformed(line);
+        }
+    }
+
+    private IOException malformed(String line) {
+        return new IOException("Malformed person line in " + location.getDescription() + ": " + line);
+    }
+
+    //Hands parsed people to the repository LOAD_BATCH at a time, so a database store commits once per batch
+    private static final class Batch {
+        private final PersonRepository repository;
+        private final Progress progress;
+        private final List<Person> people = new ArrayList<>(LOAD_BATCH);
+
+        Batch(PersonRepository repository, Progress progress) {
+            this.repository = repository;
+            this.progress = progress;
+        }
+
+        void add(Person person) {
+            if (person == null)
+                return;
+            people.add(person);
+            if (people.size() == LOAD_BATCH)
+                flush();
+        }
+
+        void flush() {
+            if (people.isEmpty())
+                return;
+            List<Person> existing = repository.addAll(people);
+            for (int i = 0; i < people.size(); i++) {
+                if (existing.get(i) == null) {
+                    progress.added.increment();
+                    progress.maxId.accumulate(people.get(i).getId());
+                } else {
+                    progress.skipped.increment();
+                }
+            }
+            people.clear();
+        }
+    }
+
+    private static final class Progress {
+        private final LongAdder added = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAccumulator maxId = new LongAccumulator(Math::max, 0);
+
+        private long rate(long started) {
+            long elapsed = System.nanoTime() - started;
+            return elapsed == 0 ? 0 : added.sum() * TimeUnit.SECONDS.toNanos(1) / elapsed;
+        }
+    }
+}
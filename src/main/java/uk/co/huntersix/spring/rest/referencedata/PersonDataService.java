@@ -1,85 +1,436 @@
 package uk.co.huntersix.spring.rest.referencedata;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import uk.co.huntersix.spring.rest.Exception.PersonAlreadyExistException;
 import uk.co.huntersix.spring.rest.Exception.PersonNotFoundException;
+import uk.co.huntersix.spring.rest.model.BatchPatchRequest;
+import uk.co.huntersix.spring.rest.model.BatchResult;
+import uk.co.huntersix.spring.rest.model.NameKey;
 import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.model.PersonChange;
+import uk.co.huntersix.spring.rest.model.PersonChangeEvent;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
 public class PersonDataService {
-    //Arrays.asList always returns fixed size array and cant add more data to this list. For this reason, used  new ArrayList<>
-    public static final List<Person> PERSON_DATA = new ArrayList<>(Arrays.asList(
-            new Person("Mary", "Smith"),
-            new Person("Brian", "Archer"),
-            new Person("Collin", "Brown")
-    )
-    );
+    private static final int WRITE_LOCK_STRIPES = 64;
 
-    public Person findPerson(String lastName, String firstName) {
-        List<Person> people = PERSON_DATA.stream()
-                .filter(p -> p.getFirstName().equalsIgnoreCase(firstName)
-                        && p.getLastName().equalsIgnoreCase(lastName))
-                .collect(Collectors.toList());
-        if (people.isEmpty()) {
-            throw new PersonNotFoundException("Person with given name and surname is not found");
+    private final PersonRepository personRepository;
+    private final List<PersonChangeListener> listeners;
+    private final PersonServiceMetrics metrics;
+    //Orders the repository change and its publication per id, so listeners see each person's changes in order
+    private final Object[] writeLocks = new Object[WRITE_LOCK_STRIPES];
+    //Adds of the same name take turns, so a name found free is still free when the new person's id is taken
+    private final Object[] addLocks = new Object[WRITE_LOCK_STRIPES];
+    //Applies the writes on one thread when set, see PersonWritePipeline
+    private volatile PersonWritePipeline writePipeline;
+
+    public PersonDataService(PersonRepository personRepository, List<PersonChangeListener> listeners,
+                             MeterRegistry meterRegistry) {
+        this.personRepository = personRepository;
+        this.listeners = listeners;
+        this.metrics = new PersonServiceMetrics(meterRegistry, personRepository);
+        for (int i = 0; i < writeLocks.length; i++) {
+            writeLocks[i] = new Object();
+            addLocks[i] = new Object();
         }
-        return people.get(0);
+    }
+
+    @Autowired
+    public PersonDataService(PersonRepository personRepository, ObjectProvider<PersonChangeListener> listeners,
+                             MeterRegistry meterRegistry) {
+        this(personRepository, listeners.orderedStream().collect(Collectors.toList()), meterRegistry);
+    }
+
+    public Person findPerson(String lastName, String firstName) {
+        return metrics.time("findPerson", () -> {
+            Person person = personRepository.findByName(lastName, firstName);
+            if (person == null) {
+                throw new PersonNotFoundException("Person with given name and surname is not found");
+            }
+            return person;
+        });
     }
 
     public List<Person> findPerson(String lastName) {
-        List<Person> people = PERSON_DATA.stream()
-                .filter(p -> p.getLastName().equalsIgnoreCase(lastName))
-                .collect(Collectors.toList());
-        if (people.isEmpty()) {
-            throw new PersonNotFoundException("Person with surname is not found");
-        }
-        return people;
+        return metrics.time("findPeople", () -> {
+            List<Person> people = new ArrayList<>(personRepository.findByLastName(lastName));
+            if (people.isEmpty()) {
+                throw new PersonNotFoundException("Person with surname is not found");
+            }
+            return people;
+        });
+    }
+
+    /**
+     * Keyset pagination over the people with the given lastName, in id order.
+     * Only the first page (no afterId) reports an unknown lastName as not found.
+     */
+    public List<Person> findPersonPage(String lastName, Long afterId, int limit) {
+        return metrics.time("findPersonPage", () -> {
+            List<Person> people = new ArrayList<>(Math.min(limit, 1024));
+            Iterator<Person> iterator = personRepository.findByLastName(lastName, afterId).iterator();
+            while (people.size() < limit && iterator.hasNext()) {
+                people.add(iterator.next());
+            }
+            if (people.isEmpty() && afterId == null) {
+                throw new PersonNotFoundException("Person with surname is not found");
+            }
+            return people;
+        });
+    }
+
+    /**
+     * Iterates the people with the given lastName without copying them, for responses written as they are read.
+     */
+    public Iterator<Person> iteratePerson(String lastName) {
+        return metrics.time("iteratePerson", () -> {
+            Iterator<Person> iterator = personRepository.findByLastName(lastName).iterator();
+            if (!iterator.hasNext()) {
+                throw new PersonNotFoundException("Person with surname is not found");
+            }
+            return iterator;
+        });
+    }
+
+    public Optional<Person> lookupPerson(String lastName, String firstName) {
+        return metrics.time("lookupPerson", () -> Optional.ofNullable(personRepository.findByName(lastName, firstName)));
+    }
+
+    public List<Person> lookupPeople(String lastName) {
+        return metrics.time("lookupPeople", () -> new ArrayList<>(personRepository.findByLastName(lastName)));
+    }
+
+    public boolean isPersonExist(String lastName, String firstName) {
+        return metrics.time("isPersonExist", () -> personRepository.findByName(lastName, firstName) != null);
+    }
+
+    public boolean isPersonExist(String lastName) {
+        return metrics.time("isPersonExistByLastName", () -> !personRepository.findByLastName(lastName).isEmpty());
     }
 
     public Person updatePerson(Long id, String firstName) {
-        Person person = PERSON_DATA.stream()
-                .filter(p -> p.getId().equals(id))
-                .findAny()
-                .orElse(null);
-        if (person == null) {
-            throw new PersonNotFoundException("Person with given id is not found");
-        }
-        person.setFirstName(firstName);
-        return person;
+        return updatePerson(id, firstName, null);
+    }
+
+    /**
+     * Optimistic update: fails with PersonVersionMismatchException unless the person is still at expectedVersion.
+     */
+    public Person updatePerson(Long id, String firstName, Long expectedVersion) {
+        return metrics.time("updatePerson", () -> write(() -> updated(id, firstName, expectedVersion)));
+    }
+
+    /**
+     * {@link #updatePerson(Long, String, Long)} without waiting for the write pipeline, when there is one.
+     *
+     * @throws uk.co.huntersix.spring.rest.Exception.TooManyRequestsException when the write queue is full
+     */
+    public CompletableFuture<Person> updatePersonAsync(Long id, String firstName, Long expectedVersion) {
+        return writeAsync(() -> updated(id, firstName, expectedVersion));
     }
 
     public void deletePerson(Long id) {
-        boolean deleted = PERSON_DATA.removeIf(p -> p.getId().equals(id));
+        metrics.time("deletePerson", () -> write(() -> deleted(id)));
+    }
 
-        if (!deleted) {
-            throw new PersonNotFoundException("Person with given id is not found");
-        }
+    /**
+     * {@link #deletePerson(Long)} without waiting for the write pipeline, when there is one.
+     *
+     * @throws uk.co.huntersix.spring.rest.Exception.TooManyRequestsException when the write queue is full
+     */
+    public CompletableFuture<Void> deletePersonAsync(Long id) {
+        return writeAsync(() -> deleted(id));
+    }
+
+    /**
+     * Applies the batch in a single pass, reporting a status per item in request order instead of failing the batch.
+     */
+    public List<BatchResult> addPeople(Iterator<Person> people) {
+        return metrics.time("addPeople", () -> writeAll(people, person -> {
+            Person existing = add(person);
+            return existing == null
+                    ? new BatchResult(BatchResult.Status.CREATED, person.getId())
+                    : new BatchResult(BatchResult.Status.CONFLICT, existing.getId());
+        }));
+    }
+
+    public List<BatchResult> updatePeople(Iterator<BatchPatchRequest> requests) {
+        return metrics.time("updatePeople", () -> writeAll(requests, request -> {
+            PersonChange change = update(request.getId(), request.getFirstName(), null);
+            return new BatchResult(change == null ? BatchResult.Status.NOT_FOUND : BatchResult.Status.UPDATED,
+                    request.getId());
+        }));
+    }
+
+    public List<BatchResult> deletePeople(Iterator<Long> ids) {
+        return metrics.time("deletePeople", () -> writeAll(ids, id -> {
+            PersonChange change = delete(id);
+            return new BatchResult(change == null ? BatchResult.Status.NOT_FOUND : BatchResult.Status.DELETED, id);
+        }));
+    }
+
+    /**
+     * @return everyone stored, read lazily and in no particular order, e.g. to snapshot the store
+     */
+    public Iterator<Person> iterateAll() {
+        return personRepository.findAll().iterator();
+    }
+
+    /**
+     * Applies changes made on the leader this node follows, in order, and publishes them like local changes. A change
+     * the stored person already has, by version, is skipped, so replaying changes a snapshot already holds is harmless.
+     */
+    public void replicate(Iterator<PersonChangeEvent> changes) {
+        metrics.time("replicate", () -> {
+            try {
+                while (changes.hasNext())
+                    replicate(changes.next(), false);
+            } finally {
+                changesPublished();
+            }
+        });
+    }
+
+    /**
+     * Makes the store hold exactly the people of a snapshot of the leader: applies each of them as
+     * {@link #replicate(Iterator)} does and deletes everyone else.
+     *
+     * @param newLog whether the snapshot comes from another change log than the changes applied so far, e.g. of a
+     *               restarted leader, whose versions can't be compared with the stored ones, so every person is
+     *               replaced
+     * @return the number of people in the snapshot
+     */
+    public long replicateSnapshot(Iterator<PersonChangeEvent> people, boolean newLog) {
+        return metrics.time("replicateSnapshot", () -> {
+            Set<Long> ids = new HashSet<>();
+            try {
+                while (people.hasNext()) {
+                    PersonChangeEvent person = people.next();
+                    ids.add(person.getId());
+                    replicate(person, newLog);
+                }
+                List<Long> removed = new ArrayList<>();
+                for (Person person : personRepository.findAll()) {
+                    if (!ids.contains(person.getId()))
+                        removed.add(person.getId());
+                }
+                for (Long id : removed)
+                    delete(id);
+            } finally {
+                changesPublished();
+            }
+            return (long) ids.size();
+        });
     }
 
     public Person addPerson(Person person) throws PersonAlreadyExistException {
-        if (isPersonExist(person))
+        return metrics.time("addPerson", () -> write(() -> added(person)));
+    }
+
+    /**
+     * {@link #addPerson(Person)} without waiting for the write pipeline, when there is one.
+     *
+     * @throws uk.co.huntersix.spring.rest.Exception.TooManyRequestsException when the write queue is full
+     */
+    public CompletableFuture<Person> addPersonAsync(Person person) {
+        return writeAsync(() -> added(person));
+    }
+
+    //Applies a write here, or on the write pipeline's thread when there is one, and waits for it to be published
+    private <T> T write(Supplier<T> mutation) {
+        PersonWritePipeline pipeline = writePipeline;
+        if (pipeline != null)
+            return PersonWritePipeline.join(pipeline.submit(mutation));
+        T result = mutation.get();
+        changesPublished();
+        return result;
+    }
+
+    private <T> CompletableFuture<T> writeAsync(Supplier<T> mutation) {
+        PersonWritePipeline pipeline = writePipeline;
+        if (pipeline != null)
+            return pipeline.submit(mutation);
+        CompletableFuture<T> written = new CompletableFuture<>();
+        try {
+            written.complete(write(mutation));
+        } catch (RuntimeException ex) {
+            written.completeExceptionally(ex);
+        }
+        return written;
+    }
+
+    //Queues every item before waiting for the first, waiting only for room in the queue, so they share group commits
+    private <T> List<BatchResult> writeAll(Iterator<T> items, Function<T, BatchResult> mutation) {
+        List<BatchResult> results = new ArrayList<>();
+        PersonWritePipeline pipeline = writePipeline;
+        if (pipeline == null) {
+            //Items applied before one that throws are still waited for
+            try {
+                while (items.hasNext())
+                    results.add(mutation.apply(items.next()));
+            } finally {
+                changesPublished();
+            }
+            return results;
+        }
+        List<CompletableFuture<BatchResult>> queued = new ArrayList<>();
+        while (items.hasNext()) {
+            T item = items.next();
+            queued.add(pipeline.put(() -> mutation.apply(item)));
+        }
+        for (CompletableFuture<BatchResult> result : queued)
+            results.add(PersonWritePipeline.join(result));
+        return results;
+    }
+
+    private Person added(Person person) {
+        Person existing = add(person);
+        if (existing != null) {
+            if (existing.getId().equals(person.getId()))
+                throw new PersonAlreadyExistException("Person with given id is already exist");
             throw new PersonAlreadyExistException("Person with given firstName and lastName is already exist");
-        person.fillId();
-        PERSON_DATA.add(person);
+        }
         return person;
     }
 
-    private boolean isPersonExist(Person person) {
-        try {
-            if (person == null)
-                return false;
+    private Person updated(Long id, String firstName, Long expectedVersion) {
+        PersonChange change = update(id, firstName, expectedVersion);
+        if (change == null) {
+            throw new PersonNotFoundException("Person with given id is not found");
+        }
+        return change.getPerson();
+    }
 
-            findPerson(person.getLastName(), person.getFirstName());
-            return true;
-        } catch (RuntimeException ex) {
-            return false;
+    private Void deleted(Long id) {
+        if (delete(id) == null) {
+            throw new PersonNotFoundException("Person with given id is not found");
+        }
+        return null;
+    }
+
+    //A new person's id is taken only once its name is known to be free, so rejected duplicates use up no ids.
+    //It is taken before the insert, so the person's lock is held before anyone else can know the id.
+    private Person add(Person person) {
+        if (person.getId() != null)
+            return insert(person);
+        synchronized (addLock(person)) {
+            Person sameName = personRepository.findByName(person.getLastName(), person.getFirstName());
+            if (sameName != null)
+                return sameName;
+            person.fillId();
+            return insert(person);
+        }
+    }
+
+    private Person insert(Person person) {
+        synchronized (writeLock(person.getId())) {
+            beforeChange();
+            Person existing = personRepository.add(person);
+            if (existing == null)
+                publish(new PersonChange(PersonChange.Type.ADDED, person, null));
+            return existing;
         }
     }
 
+    private PersonChange update(Long id, String firstName, Long expectedVersion) {
+        synchronized (writeLock(id)) {
+            beforeChange();
+            PersonChange change = personRepository.updateFirstName(id, firstName, expectedVersion);
+            if (change != null)
+                publish(change);
+            return change;
+        }
+    }
+
+    //The next version is applied as an ordinary update, so readers never miss the person; anything else replaces it.
+    //A replacement under another lastName is published as the old person's deletion and the new one's addition, as
+    //listeners only expect an update to change the firstName.
+    private void replicate(PersonChangeEvent event, boolean replace) {
+        synchronized (writeLock(event.getId())) {
+            beforeChange();
+            Person current = personRepository.findById(event.getId());
+            if (event.getType() == PersonChange.Type.DELETED) {
+                PersonChange change = personRepository.delete(event.getId());
+                if (change != null)
+                    publish(change);
+                return;
+            }
+            if (!replace && current != null && current.getVersion() >= event.getVersion())
+                return;
+            boolean sameLastName = current != null && current.getLastName().equals(event.getLastName());
+            if (!replace && sameLastName && current.getVersion() + 1 == event.getVersion()) {
+                PersonChange change = personRepository.updateFirstName(event.getId(), event.getFirstName(),
+                        current.getVersion());
+                if (change != null)
+                    publish(change);
+                return;
+            }
+            Person person = event.toPerson();
+            personRepository.restore(person);
+            if (sameLastName) {
+                publish(new PersonChange(PersonChange.Type.UPDATED, person, current.getFirstName()));
+                return;
+            }
+            if (current != null)
+                publish(new PersonChange(PersonChange.Type.DELETED, current, null));
+            publish(new PersonChange(PersonChange.Type.ADDED, person, null));
+        }
+    }
+
+    private PersonChange delete(Long id) {
+        synchronized (writeLock(id)) {
+            beforeChange();
+            PersonChange change = personRepository.delete(id);
+            if (change != null)
+                publish(change);
+            return change;
+        }
+    }
+
+    private Object writeLock(Long id) {
+        int hash = Objects.hashCode(id);
+        return writeLocks[(hash ^ (hash >>> 16)) & (WRITE_LOCK_STRIPES - 1)];
+    }
+
+    private Object addLock(Person person) {
+        int hash = NameKey.of(person.getLastName(), person.getFirstName()).hashCode();
+        return addLocks[(hash ^ (hash >>> 16)) & (WRITE_LOCK_STRIPES - 1)];
+    }
+
+    private void beforeChange() {
+        for (PersonChangeListener listener : listeners) {
+            listener.beforeChange();
+        }
+    }
+
+    private void publish(PersonChange change) {
+        for (PersonChangeListener listener : listeners) {
+            listener.personChanged(change);
+        }
+    }
+
+    void useWritePipeline(PersonWritePipeline pipeline) {
+        this.writePipeline = pipeline;
+    }
+
+    void changesPublished() {
+        for (PersonChangeListener listener : listeners) {
+            listener.changesPublished();
+        }
+    }
 
 }
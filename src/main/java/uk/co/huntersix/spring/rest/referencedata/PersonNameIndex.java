@@ -0,0 +1,320 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import uk.co.huntersix.spring.rest.model.NameKey;
+import uk.co.huntersix.spring.rest.model.NameMatch;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.model.PersonChange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Search index over the distinct lastNames in the repository, folded the way the repository matches names.
+ * <p>
+ * The folded names form a radix trie (a trie with single-child chains merged into one edge) whose children are
+ * sorted, so prefix search finds the prefix's node and walks it in alphabetical order, costing the prefix length plus
+ * the results returned. Fuzzy search walks the trie computing one row of the Levenshtein table per character, which
+ * every name below shares, and skips a branch as soon as its row has no cell within maxEdits; only the few branches
+ * close to the query are visited, whatever the number of names.
+ * <p>
+ * Nodes are immutable and writers replace the path to the changed node under a lock, so searches never lock. Built
+ * from the repository at startup and kept up to date by the changes PersonDataService publishes.
+ */
+@Component
+public class PersonNameIndex implements PersonChangeListener, MeterBinder {
+    public static final int MAX_EDITS = 2;
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final Comparator<NameMatch> FUZZY_ORDER = Comparator.comparingInt(NameMatch::getDistance)
+            .thenComparing(Comparator.comparingInt(NameMatch::getCount).reversed())
+            .thenComparing(NameMatch::getLastName);
+
+    private final Object writeLock = new Object();
+    private volatile Node root = new Node("", NO_CHILDREN, null);
+    private volatile int size;
+
+    public PersonNameIndex(@Autowired PersonRepository personRepository) {
+        personRepository.findAll().forEach(person -> add(person.getLastName()));
+    }
+
+    @Override
+    public void personChanged(PersonChange change) {
+        Person person = change.getPerson();
+        if (change.getType() == PersonChange.Type.ADDED)
+            add(person.getLastName());
+        else if (change.getType() == PersonChange.Type.DELETED)
+            remove(person.getLastName());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("person.index.keys", this, PersonNameIndex::size)
+                .description("Distinct keys in a name index")
+                .tag("index", "search")
+                .register(registry);
+    }
+
+    /**
+     * @return the number of distinct lastNames indexed, compared ignoring case
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return up to limit lastNames starting with the prefix, ignoring case, in alphabetical order of their folded form
+     */
+    public List<NameMatch> findByPrefix(String prefix, int limit) {
+        String key = NameKey.fold(prefix);
+        Node node = root;
+        int depth = 0;
+        while (depth < key.length()) {
+            Node child = node.child(key.charAt(depth));
+            if (child == null)
+                return Collections.emptyList();
+            int common = commonPrefix(child.label, key, depth);
+            if (common < child.label.length() && depth + common < key.length())
+                return Collections.emptyList();
+            depth += common;
+            node = child;
+        }
+        List<NameMatch> matches = new ArrayList<>(Math.min(limit, 64));
+        collect(node, matches, limit);
+        return matches;
+    }
+
+    /**
+     * @return up to limit lastNames within maxEdits insertions, deletions or substitutions of the name, ignoring
+     * case, closest first and then the most common first
+     */
+    public List<NameMatch> findSimilar(String name, int maxEdits, int limit) {
+        String key = NameKey.fold(name);
+        int[] row = new int[key.length() + 1];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = i;
+        }
+        List<NameMatch> matches = new ArrayList<>();
+        Node start = root;
+        if (start.entry != null && row[key.length()] <= maxEdits)
+            matches.add(start.entry.match(row[key.length()]));
+        for (Node child : start.children) {
+            similar(child, key, row, maxEdits, matches);
+        }
+        matches.sort(FUZZY_ORDER);
+        return matches.size() > limit ? matches.subList(0, limit) : matches;
+    }
+
+    private static void collect(Node node, List<NameMatch> matches, int limit) {
+        if (matches.size() == limit)
+            return;
+        if (node.entry != null)
+            matches.add(node.entry.match(0));
+        for (Node child : node.children) {
+            if (matches.size() == limit)
+                return;
+            collect(child, matches, limit);
+        }
+    }
+
+    //previous is the Levenshtein row of the query against the name up to this node's edge
+    private static void similar(Node node, String key, int[] previous, int maxEdits, List<NameMatch> matches) {
+        int[] row = previous;
+        for (int i = 0; i < node.label.length(); i++) {
+            row = nextRow(row, key, node.label.charAt(i));
+            if (min(row) > maxEdits)
+                return;
+        }
+        int distance = row[key.length()];
+        if (node.entry != null && distance <= maxEdits)
+            matches.add(node.entry.match(distance));
+        for (Node child : node.children) {
+            similar(child, key, row, maxEdits, matches);
+        }
+    }
+
+    private static int[] nextRow(int[] previous, String key, char c) {
+        int[] row = new int[previous.length];
+        row[0] = previous[0] + 1;
+        for (int j = 1; j < row.length; j++) {
+            int substitution = previous[j - 1] + (key.charAt(j - 1) == c ? 0 : 1);
+            row[j] = Math.min(substitution, Math.min(previous[j], row[j - 1]) + 1);
+        }
+        return row;
+    }
+
+    private static int min(int[] row) {
+        int min = row[0];
+        for (int value : row) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    private void add(String lastName) {
+        String name = lastName == null ? "" : lastName;
+        String key = NameKey.fold(name);
+        synchronized (writeLock) {
+            Entry entry = find(key);
+            if (entry != null) {
+                entry.count++;
+                return;
+            }
+            entry = new Entry(name);
+            entry.count = 1;
+            root = insert(root, key, 0, entry);
+            size++;
+        }
+    }
+
+    private void remove(String lastName) {
+        String key = NameKey.fold(lastName == null ? "" : lastName);
+        synchronized (writeLock) {
+            Entry entry = find(key);
+            if (entry == null)
+                return;
+            if (--entry.count == 0) {
+                Node removed = remove(root, key, 0);
+                root = removed == null ? new Node("", NO_CHILDREN, null) : removed;
+                size--;
+            }
+        }
+    }
+
+    private Entry find(String key) {
+        Node node = root;
+        int depth = 0;
+        while (depth < key.length()) {
+            node = node.child(key.charAt(depth));
+            if (node == null || !key.startsWith(node.label, depth))
+                return null;
+            depth += node.label.length();
+        }
+        return node.entry;
+    }
+
+    //Returns a copy of node with the key added below it; depth is the number of key characters node accounts for
+    private static Node insert(Node node, String key, int depth, Entry entry) {
+        if (depth == key.length())
+            return new Node(node.label, node.children, entry);
+        int index = node.indexOf(key.charAt(depth));
+        if (index < 0)
+            return node.withChild(-index - 1, new Node(key.substring(depth), NO_CHILDREN, entry), true);
+        Node child = node.children[index];
+        int common = commonPrefix(child.label, key, depth);
+        if (common < child.label.length()) {
+            Node tail = new Node(child.label.substring(common), child.children, child.entry);
+            child = new Node(child.label.substring(0, common), new Node[]{tail}, null);
+        }
+        return node.withChild(index, insert(child, key, depth + common, entry), false);
+    }
+
+    //Returns a copy of node without the key, or null when nothing is left below it. Emptied chains are dropped
+    //but not merged back into their parent edge, which only costs a node per emptied branch.
+    private static Node remove(Node node, String key, int depth) {
+        if (depth == key.length())
+            return node.children.length == 0 ? null : new Node(node.label, node.children, null);
+        int index = node.indexOf(key.charAt(depth));
+        Node child = node.children[index];
+        Node removed = remove(child, key, depth + child.label.length());
+        if (removed != null)
+            return node.withChild(index, removed, false);
+        if (node.children.length == 1 && node.entry == null && !node.label.isEmpty())
+            return null;
+        Node[] children = new Node[node.children.length - 1];
+        System.arraycopy(node.children, 0, children, 0, index);
+        System.arraycopy(node.children, index + 1, children, index, children.length - index);
+        return new Node(node.label, children, node.entry);
+    }
+
+    private static int commonPrefix(String label, String key, int depth) {
+        int common = 0;
+        while (common < label.length() && depth + common < key.length()
+                && label.charAt(common) == key.charAt(depth + common)) {
+            common++;
+        }
+        return common;
+    }
+
+    //Levenshtein distance, or maxEdits + 1 as soon as it is known to be larger than maxEdits
+    static int distance(String a, String b, int maxEdits) {
+        int[] row = new int[b.length() + 1];
+        for (int j = 0; j < row.length; j++) {
+            row[j] = j;
+        }
+        for (int i = 0; i < a.length(); i++) {
+            row = nextRow(row, b, a.charAt(i));
+            if (min(row) > maxEdits)
+                return maxEdits + 1;
+        }
+        return Math.min(row[b.length()], maxEdits + 1);
+    }
+
+    private static final class Node {
+        private final String label;
+        //Sorted by the first character of their label, which is unique among siblings
+        private final Node[] children;
+        private final Entry entry;
+
+        private Node(String label, Node[] children, Entry entry) {
+            this.label = label;
+            this.children = children;
+            this.entry = entry;
+        }
+
+        private Node child(char c) {
+            int index = indexOf(c);
+            return index < 0 ? null : children[index];
+        }
+
+        //Binary search on the first label character, as Arrays.binarySearch reports a missing one
+        private int indexOf(char c) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char label = children[middle].label.charAt(0);
+                if (label < c)
+                    low = middle + 1;
+                else if (label > c)
+                    high = middle - 1;
+                else
+                    return middle;
+            }
+            return -(low + 1);
+        }
+
+        private Node withChild(int index, Node child, boolean insert) {
+            Node[] copy;
+            if (insert) {
+                copy = new Node[children.length + 1];
+                System.arraycopy(children, 0, copy, 0, index);
+                System.arraycopy(children, index, copy, index + 1, children.length - index);
+            } else {
+                copy = Arrays.copyOf(children, children.length);
+            }
+            copy[index] = child;
+            return new Node(label, copy, entry);
+        }
+    }
+
+    //The lastName as first indexed, and the number of people with it; count is only changed under the write lock
+    private static final class Entry {
+        private final String lastName;
+        private volatile int count;
+
+        private Entry(String lastName) {
+            this.lastName = lastName;
+        }
+
+        private NameMatch match(int distance) {
+            return new NameMatch(lastName, count, distance);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.huntersix.spring.rest.model.PersonChangeEvent;
+import uk.co.huntersix.spring.rest.model.PersonChangePage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps this node's store a read replica of a leader node. It starts from a snapshot of the leader's store and then
+ * long-polls the leader's change log, applying each batch of changes through PersonDataService so the response cache
+ * and name index follow. When the leader no longer has the changes it needs, or has restarted with a new log, it
+ * starts again from a snapshot.
+ * <p>
+ * The replication lag is published as person.replication.lag, the time from a change being logged on the leader to
+ * being applied here, and person.replication.behind, the number of leader changes not yet applied. The first
+ * compares two nodes' clocks, so it is only as accurate as they agree.
+ */
+public class PersonReplicaFollower implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(PersonReplicaFollower.class);
+    private static final int PAGE_SIZE = 1000;
+    private static final long RETRY_MILLIS = 1000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private final String leaderUrl;
+    private final long pollWaitMillis;
+    private final PersonDataService personDataService;
+    private final ObjectMapper objectMapper;
+    private final Timer lag;
+
+    //Written by the follower thread only
+    private volatile String log;
+    private volatile long applied;
+    private volatile long leaderHead;
+    private volatile boolean closed;
+    private Thread follower;
+
+    public PersonReplicaFollower(String leaderUrl, long pollWaitMillis, PersonDataService personDataService,
+                                 ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.leaderUrl = leaderUrl.endsWith("/") ? leaderUrl.substring(0, leaderUrl.length() - 1) : leaderUrl;
+        this.pollWaitMillis = pollWaitMillis;
+        this.personDataService = personDataService;
+        this.objectMapper = objectMapper;
+        this.lag = Timer.builder("person.replication.lag")
+                .description("Time from a change being logged on the leader to being applied here")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("person.replication.behind", this, PersonReplicaFollower::behind)
+                .description("Changes logged on the leader and not yet applied here")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Copies the leader's store before returning, so the node starts serving with the leader's data, and then keeps
+     * following it in the background.
+     */
+    public void start() throws IOException {
+        bootstrap();
+        follower = new Thread(this::follow, "person-replica-follower");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    public long applied() {
+        return applied;
+    }
+
+    public long behind() {
+        return Math.max(0, leaderHead - applied);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (follower != null)
+            follower.interrupt();
+    }
+
+    private void follow() {
+        while (!closed) {
+            try {
+                HttpURLConnection connection = open("/changes/person?after=" + applied + "&limit=" + PAGE_SIZE
+                        + "&wait=" + pollWaitMillis);
+                if (connection.getResponseCode() == HttpURLConnection.HTTP_GONE) {
+                    connection.disconnect();
+                    LOG.warn("Leader {} no longer has the changes after {}; copying its store again", leaderUrl,
+                            applied);
+                    bootstrap();
+                    continue;
+                }
+                PersonChangePage page;
+                try (InputStream in = body(connection)) {
+                    page = objectMapper.readValue(in, PersonChangePage.class);
+                }
+                if (!page.getLog().equals(log)) {
+                    LOG.warn("Leader {} started a new change log; copying its store again", leaderUrl);
+                    bootstrap();
+                    continue;
+                }
+                apply(page);
+            } catch (IOException | RuntimeException ex) {
+                if (closed)
+                    return;
+                LOG.warn("Following leader {} failed, retrying: {}", leaderUrl, ex.toString());
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void apply(PersonChangePage page) {
+        if (!page.getChanges().isEmpty()) {
+            personDataService.replicate(page.getChanges().iterator());
+            long now = System.currentTimeMillis();
+            for (PersonChangeEvent change : page.getChanges())
+                lag.record(Math.max(0, now - change.getTimestamp()), TimeUnit.MILLISECONDS);
+            applied = page.getChanges().get(page.getChanges().size() - 1).getSequence();
+        }
+        leaderHead = page.getHead();
+    }
+
+    private void bootstrap() throws IOException {
+        long started = System.nanoTime();
+        HttpURLConnection connection = open("/changes/person/snapshot");
+        try (InputStream in = body(connection)) {
+            String snapshotLog = connection.getHeaderField(PersonChangeLog.LOG_HEADER);
+            long sequence = Long.parseLong(connection.getHeaderField(PersonChangeLog.SEQUENCE_HEADER));
+            MappingIterator<PersonChangeEvent> people = objectMapper.readerFor(PersonChangeEvent.class).readValues(in);
+            //A new log restarts the versions, so a person's stored version says nothing about the snapshot's
+            long count = personDataService.replicateSnapshot(people, !Objects.equals(snapshotLog, log));
+            log = snapshotLog;
+            applied = sequence;
+            leaderHead = Math.max(leaderHead, sequence);
+            LOG.info("Copied {} people from leader {} at change {} in {} ms", count, leaderUrl, sequence,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        }
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(leaderUrl + path).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout((int) (pollWaitMillis + CONNECT_TIMEOUT_MILLIS));
+        return connection;
+    }
+
+    private static InputStream body(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            throw new IOException("Leader answered " + status + " to " + connection.getURL());
+        }
+        return connection.getInputStream();
+    }
+}
@@ -0,0 +1,102 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import uk.co.huntersix.spring.rest.Exception.PersonVersionMismatchException;
+import uk.co.huntersix.spring.rest.model.NameKey;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.model.PersonChange;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Storage behind {@link PersonDataService}. Names are matched the way String.equalsIgnoreCase compares them and
+ * people sharing a lastName are returned in id order. Implementations are safe for concurrent use.
+ */
+public interface PersonRepository {
+
+    default Person findByName(String lastName, String firstName) {
+        return findByName(NameKey.of(lastName, firstName));
+    }
+
+    Person findByName(NameKey fullName);
+
+    default Collection<Person> findByLastName(String lastName) {
+        return findByLastName(NameKey.of(lastName), null);
+    }
+
+    default Collection<Person> findByLastName(String lastName, Long afterId) {
+        return findByLastName(NameKey.of(lastName), afterId);
+    }
+
+    /**
+     * @return an id-ordered view of the people with the given lastName whose id is greater than afterId,
+     * read lazily so callers can iterate large results without copying them
+     */
+    Collection<Person> findByLastName(NameKey lastName, Long afterId);
+
+    Person findById(Long id);
+
+    /**
+     * @return a view of everyone stored, in no particular order, that may or may not reflect concurrent writes
+     */
+    Collection<Person> findAll();
+
+    /**
+     * Stores the person unless someone with the same name or id is already stored, assigning an id if it has none.
+     *
+     * @return the already stored person that prevented the insert, or null when the person was added
+     */
+    Person add(Person person);
+
+    /**
+     * Adds the people in order as {@link #add(Person)} would, for stores that can write them together, e.g. in one
+     * database transaction.
+     *
+     * @return for each person, the already stored person that prevented its insert, or null when it was added
+     */
+    default List<Person> addAll(List<Person> people) {
+        List<Person> existing = new ArrayList<>(people.size());
+        for (Person person : people)
+            existing.add(add(person));
+        return existing;
+    }
+
+    /**
+     * @return the update, or null when no person has the given id
+     */
+    default PersonChange updateFirstName(Long id, String firstName) {
+        return updateFirstName(id, firstName, null);
+    }
+
+    /**
+     * Updates the firstName and increments the version, atomically with checking expectedVersion when it is not null.
+     *
+     * @return the update, or null when no person has the given id
+     * @throws PersonVersionMismatchException when the stored version is not expectedVersion
+     */
+    PersonChange updateFirstName(Long id, String firstName, Long expectedVersion);
+
+    /**
+     * @return the deletion, or null when no person has the given id
+     */
+    PersonChange delete(Long id);
+
+    /**
+     * Stores the person with its id and version as they are, replacing anyone with the same id and skipping the
+     * name check. For rebuilding a repository from a log; not atomic with concurrent writes to the same person.
+     */
+    void restore(Person person);
+
+    int size();
+
+    /**
+     * @return the number of distinct lastNames stored, compared ignoring case
+     */
+    int lastNameCount();
+
+    /**
+     * @return the number of distinct (lastName, firstName) pairs stored, compared ignoring case
+     */
+    int fullNameCount();
+}
@@ -0,0 +1,103 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Meters of PersonDataService: a timer per method, a counter per failure status and gauges of the store's size.
+ * <p>
+ * Meters are looked up in maps that only grow the first time a method or failure is seen, so timing a call costs two
+ * clock reads, a map read and the timer's count, sum and max. The timers publish no percentile histogram unless
+ * management.metrics.distribution.percentiles-histogram.person.service is set, as recording one halves the
+ * throughput of an in-memory lookup.
+ */
+final class PersonServiceMetrics {
+    static final String TIMER = "person.service";
+    static final String ERRORS = "person.errors";
+    private static final String NO_EXCEPTION = "None";
+    //Lookups take microseconds, well below the histogram's default lower bound of a millisecond, when one is enabled
+    private static final Duration MIN_EXPECTED = Duration.ofNanos(500);
+    private static final Duration MAX_EXPECTED = Duration.ofSeconds(30);
+
+    private final MeterRegistry registry;
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<Class<?>, Timer>> failureTimers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, Counter> errors = new ConcurrentHashMap<>();
+    //Created once so the hot path doesn't allocate a lambda per call
+    private final Function<String, Timer> successTimer = method -> timer(method, NO_EXCEPTION);
+    private final Function<Class<?>, Counter> errorCounter = this::errorCounter;
+
+    PersonServiceMetrics(MeterRegistry registry, PersonRepository personRepository) {
+        this.registry = registry;
+        Gauge.builder("person.records", personRepository, PersonRepository::size)
+                .description("People stored")
+                .register(registry);
+        Gauge.builder("person.index.keys", personRepository, PersonRepository::lastNameCount)
+                .description("Distinct keys in a name index")
+                .tag("index", "lastName")
+                .register(registry);
+        Gauge.builder("person.index.keys", personRepository, PersonRepository::fullNameCount)
+                .description("Distinct keys in a name index")
+                .tag("index", "fullName")
+                .register(registry);
+    }
+
+    <T> T time(String method, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            get(timers, method, successTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (RuntimeException e) {
+            get(get(failureTimers, method, k -> new ConcurrentHashMap<>()), e.getClass(),
+                    exception -> timer(method, exception.getSimpleName()))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            get(errors, e.getClass(), errorCounter).increment();
+            throw e;
+        }
+    }
+
+    void time(String method, Runnable call) {
+        time(method, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    //get before computeIfAbsent, which locks even when the key is present on Java 8
+    private static <K, V> V get(ConcurrentMap<K, V> map, K key, Function<? super K, ? extends V> create) {
+        V value = map.get(key);
+        return value != null ? value : map.computeIfAbsent(key, create);
+    }
+
+    private Timer timer(String method, String exception) {
+        return Timer.builder(TIMER)
+                .description("PersonDataService calls")
+                .tag("method", method)
+                .tag("exception", exception)
+                .minimumExpectedValue(MIN_EXPECTED)
+                .maximumExpectedValue(MAX_EXPECTED)
+                .register(registry);
+    }
+
+    //Tagged with the HTTP status the exception maps to, e.g. 404 for PersonNotFoundException
+    private Counter errorCounter(Class<?> exception) {
+        ResponseStatus status = AnnotatedElementUtils.findMergedAnnotation(exception, ResponseStatus.class);
+        return Counter.builder(ERRORS)
+                .description("PersonDataService calls that failed")
+                .tag("exception", exception.getSimpleName())
+                .tag("status", status == null ? "500" : Integer.toString(status.code().value()))
+                .register(registry);
+    }
+}
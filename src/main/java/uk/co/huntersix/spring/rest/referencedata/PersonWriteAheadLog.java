@@ -0,0 +1,578 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.model.PersonChange;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Makes the changes published by PersonDataService survive restarts, with an append-only log of every change and
+ * periodic snapshots of the whole repository in one directory.
+ * <p>
+ * Changes are appended to an in-memory buffer in the order each person was changed. A single writer thread writes
+ * whatever has accumulated with one write and one fsync, so concurrent requests share an fsync instead of queueing
+ * for one each (group commit), and a request returns once its changes are durable.
+ * <p>
+ * A snapshot first switches the log to a new segment and then writes everyone stored. That snapshot plus the
+ * segments from it on describe the current state. Log records hold the whole person, so replaying a change the
+ * snapshot already reflects is harmless. Recovery maps the latest snapshot and then replays those segments,
+ * cutting off a record torn by a crash in the middle of a write.
+ * <p>
+ * Once a write has failed, or the log is closed, changes are refused before they are applied rather than buffered
+ * for a writer that is gone.
+ */
+public class PersonWriteAheadLog implements PersonChangeListener, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(PersonWriteAheadLog.class);
+    private static final int SNAPSHOT_MAGIC = 0x50534e31;
+    private static final int MAP_WINDOW = 1 << 30;
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    //What a thread last appended when its change came after a failure or close and was not logged
+    private static final long UNLOGGED = -1;
+
+    private final Path directory;
+    private final boolean sync;
+    private final long snapshotIntervalSeconds;
+    private final ThreadLocal<Long> lastAppended = new ThreadLocal<>();
+    private final Object snapshotLock = new Object();
+    //A lock rather than a monitor so requests waiting for their group commit don't pin a virtual thread's carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    //Signalled when records, a segment switch or close are waiting for the writer
+    private final Condition work = lock.newCondition();
+    //Signalled when a group commit completes or fails
+    private final Condition written = lock.newCondition();
+
+    //Guarded by lock
+    private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+    private long appendedCount;
+    private long durableCount;
+    private CompletableFuture<Long> rotation;
+    //Volatile as well, so beforeChange() can check them without the lock
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    //Used by the writer thread once it is started
+    private ByteBuffer writing = ByteBuffer.allocate(BUFFER_SIZE);
+    private FileChannel channel;
+    private long segment;
+
+    private PersonRepository repository;
+    private Thread writer;
+    private ScheduledExecutorService snapshots;
+
+    /**
+     * @param sync                    whether to fsync every group of records, or leave flushing to the OS
+     * @param snapshotIntervalSeconds how often to snapshot while running, 0 for only when {@link #snapshot()} is called
+     */
+    public PersonWriteAheadLog(Path directory, boolean sync, long snapshotIntervalSeconds) {
+        this.directory = directory;
+        this.sync = sync;
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+    }
+
+    /**
+     * Rebuilds the repository from the directory and starts logging to it.
+     *
+     * @return false when the directory held no state, e.g. on first start
+     */
+    public boolean recover(PersonRepository repository) throws IOException {
+        Files.createDirectories(directory);
+        long started = System.nanoTime();
+        long snapshot = latest(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        List<Long> segments = numbered(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        segments.removeIf(number -> number < snapshot);
+
+        boolean found = snapshot >= 0;
+        long maxId = 0;
+        if (snapshot >= 0)
+            maxId = loadSnapshot(path(SNAPSHOT_PREFIX, snapshot, SNAPSHOT_SUFFIX), repository);
+        long replayed = 0;
+        for (long number : segments) {
+            Path path = path(SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+            found |= Files.size(path) > 0;
+            long[] counts = replay(path, repository);
+            replayed += counts[0];
+            maxId = Math.max(maxId, counts[1]);
+        }
+        Person.reserveIds(maxId);
+        if (found)
+            LOG.info("Recovered {} people from {} in {} ms ({} log records replayed)", repository.size(), directory,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), replayed);
+
+        this.repository = repository;
+        this.segment = segments.isEmpty() ? Math.max(snapshot, 0) : segments.get(segments.size() - 1);
+        this.channel = openSegment(segment);
+        writer = new Thread(this::writeLoop, "person-wal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        if (snapshotIntervalSeconds > 0) {
+            snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "person-wal-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshots.scheduleWithFixedDelay(this::scheduledSnapshot, snapshotIntervalSeconds,
+                    snapshotIntervalSeconds, TimeUnit.SECONDS);
+        }
+        return found;
+    }
+
+    //Refuses a change while the log is broken or closed, so the change is never applied without being logged
+    @Override
+    public void beforeChange() {
+        checkWritable();
+    }
+
+    @Override
+    public void personChanged(PersonChange change) {
+        byte[] record = encode(change);
+        lock.lock();
+        try {
+            //Only a change that passed beforeChange() just before the failure or close gets here
+            if (failure != null || closed) {
+                lastAppended.set(UNLOGGED);
+                return;
+            }
+            if (pending.remaining() < record.length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + record.length));
+                pending.flip();
+                larger.put(pending);
+                pending = larger;
+            }
+            pending.put(record);
+            lastAppended.set(++appendedCount);
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Waits for the group commit that covers the last record this thread appended
+    @Override
+    public void changesPublished() {
+        Long appended = lastAppended.get();
+        if (appended == null)
+            return;
+        lastAppended.remove();
+        lock.lock();
+        try {
+            if (appended == UNLOGGED)
+                checkWritable();
+            while (durableCount < appended) {
+                if (failure != null)
+                    checkWritable();
+                try {
+                    written.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for person changes to be written", ex);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the repository and removes the snapshot and log segments it replaces.
+     */
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            long started = System.nanoTime();
+            CompletableFuture<Long> rotated = new CompletableFuture<>();
+            lock.lock();
+            try {
+                if (failure != null)
+                    throw failure;
+                //The writer has stopped, so nothing would switch the segment
+                if (closed)
+                    throw new IOException("Person write-ahead log in " + directory + " is closed");
+                rotation = rotated;
+                work.signal();
+            } finally {
+                lock.unlock();
+            }
+            long number;
+            try {
+                number = rotated.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while switching log segment", ex);
+            } catch (ExecutionException ex) {
+                throw new IOException("Failed to switch log segment", ex.getCause());
+            }
+
+            long written = writeSnapshot(number);
+            for (long older : numbered(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+                if (older < number)
+                    Files.deleteIfExists(path(SNAPSHOT_PREFIX, older, SNAPSHOT_SUFFIX));
+            }
+            for (long older : numbered(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                if (older < number)
+                    Files.deleteIfExists(path(SEGMENT_PREFIX, older, SEGMENT_SUFFIX));
+            }
+            LOG.info("Wrote snapshot {} of {} people in {} ms", number, written,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (snapshots != null)
+            snapshots.shutdownNow();
+        lock.lock();
+        try {
+            closed = true;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (writer != null) {
+            try {
+                writer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (channel != null)
+            channel.close();
+    }
+
+    private void checkWritable() {
+        if (failure != null)
+            throw new UncheckedIOException("Person changes could not be written to " + directory, failure);
+        if (closed)
+            throw new IllegalStateException("Person write-ahead log in " + directory + " is closed");
+    }
+
+    private void scheduledSnapshot() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException ex) {
+            LOG.error("Failed to snapshot people to {}", directory, ex);
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            long batchCount;
+            CompletableFuture<Long> rotate;
+            lock.lock();
+            try {
+                //Only close stops the writer
+                while (pending.position() == 0 && rotation == null && !closed) {
+                    work.awaitUninterruptibly();
+                }
+                if (pending.position() == 0 && rotation == null)
+                    return;
+                ByteBuffer swap = writing;
+                writing = pending;
+                pending = swap;
+                batchCount = appendedCount;
+                rotate = rotation;
+                rotation = null;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                writing.flip();
+                while (writing.hasRemaining()) {
+                    channel.write(writing);
+                }
+                writing.clear();
+                if (sync)
+                    channel.force(false);
+                if (rotate != null) {
+                    if (!sync)
+                        channel.force(false);
+                    channel.close();
+                    channel = openSegment(++segment);
+                }
+            } catch (IOException ex) {
+                LOG.error("Failed to write person changes to {}", directory, ex);
+                lock.lock();
+                try {
+                    failure = ex;
+                    if (rotation != null)
+                        rotation.completeExceptionally(ex);
+                    written.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                if (rotate != null)
+                    rotate.completeExceptionally(ex);
+                return;
+            }
+            lock.lock();
+            try {
+                durableCount = batchCount;
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (rotate != null)
+                rotate.complete(segment);
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(path(SEGMENT_PREFIX, number, SEGMENT_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    //Written to a temporary file that is renamed once complete, so a crash never leaves a partial snapshot. Each person
+    //is copied first, as writes go on meanwhile and every record must hold the names and version of one update
+    private long writeSnapshot(long number) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT_PREFIX + number + ".tmp");
+        long written = 0;
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, BUFFER_SIZE))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(Person.lastAssignedId());
+            for (Person stored : repository.findAll()) {
+                Person person = stored.copy();
+                out.writeBoolean(true);
+                out.writeLong(person.getId());
+                out.writeLong(person.getVersion());
+                writeName(out, person.getFirstName());
+                writeName(out, person.getLastName());
+                written++;
+            }
+            out.writeBoolean(false);
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary, path(SNAPSHOT_PREFIX, number, SNAPSHOT_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    //Returns the highest id seen, so ids handed out before the snapshot are not handed out again
+    private static long loadSnapshot(Path path, PersonRepository repository) throws IOException {
+        try (MappedInput in = new MappedInput(path)) {
+            if (!in.ensure(12) || in.buffer.getInt() != SNAPSHOT_MAGIC)
+                throw new IOException("Not a person snapshot: " + path);
+            long maxId = in.buffer.getLong();
+            while (true) {
+                if (!in.ensure(1))
+                    throw new IOException("Truncated person snapshot: " + path);
+                if (in.buffer.get() == 0)
+                    return maxId;
+                if (!in.ensure(16))
+                    throw new IOException("Truncated person snapshot: " + path);
+                long id = in.buffer.getLong();
+                long version = in.buffer.getLong();
+                String firstName = readName(in, path);
+                String lastName = readName(in, path);
+                repository.restore(new Person(id, firstName, lastName, version));
+                maxId = Math.max(maxId, id);
+            }
+        }
+    }
+
+    //Returns the number of records replayed and the highest id seen; cuts the segment at a torn or corrupt record
+    private static long[] replay(Path path, PersonRepository repository) throws IOException {
+        long replayed = 0;
+        long maxId = 0;
+        long valid;
+        long size;
+        try (MappedInput in = new MappedInput(path)) {
+            size = in.size;
+            CRC32 crc = new CRC32();
+            while (true) {
+                valid = in.position();
+                if (!in.ensure(8))
+                    break;
+                int length = in.buffer.getInt();
+                int checksum = in.buffer.getInt();
+                if (length <= 0 || length > MAX_RECORD_SIZE || !in.ensure(length))
+                    break;
+                byte[] record = new byte[length];
+                in.buffer.get(record);
+                crc.reset();
+                crc.update(record, 0, length);
+                if ((int) crc.getValue() != checksum)
+                    break;
+                maxId = Math.max(maxId, apply(ByteBuffer.wrap(record), repository));
+                replayed++;
+            }
+        }
+        if (valid < size) {
+            LOG.warn("Cutting {} bytes of torn or corrupt records from the end of {}", size - valid, path);
+            try (FileChannel truncate = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                truncate.truncate(valid);
+            }
+        }
+        return new long[]{replayed, maxId};
+    }
+
+    private static long apply(ByteBuffer record, PersonRepository repository) {
+        PersonChange.Type type = PersonChange.Type.values()[record.get()];
+        long id = record.getLong();
+        long version = record.getLong();
+        String firstName = getName(record);
+        String lastName = getName(record);
+        if (type == PersonChange.Type.DELETED)
+            repository.delete(id);
+        else
+            repository.restore(new Person(id, firstName, lastName, version));
+        return id;
+    }
+
+    //[length][crc32][type][id][version][firstName][lastName], names as a length (-1 for null) and UTF-8 bytes
+    private static byte[] encode(PersonChange change) {
+        Person person = change.getPerson();
+        byte[] firstName = bytes(person.getFirstName());
+        byte[] lastName = bytes(person.getLastName());
+        int length = 1 + 8 + 8 + nameSize(firstName) + nameSize(lastName);
+        ByteBuffer record = ByteBuffer.allocate(8 + length);
+        record.putInt(length);
+        record.putInt(0);
+        record.put((byte) change.getType().ordinal());
+        record.putLong(person.getId());
+        record.putLong(person.getVersion());
+        putName(record, firstName);
+        putName(record, lastName);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, length);
+        record.putInt(4, (int) crc.getValue());
+        return record.array();
+    }
+
+    private static byte[] bytes(String name) {
+        return name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int nameSize(byte[] name) {
+        return 4 + (name == null ? 0 : name.length);
+    }
+
+    private static void putName(ByteBuffer buffer, byte[] name) {
+        buffer.putInt(name == null ? -1 : name.length);
+        if (name != null)
+            buffer.put(name);
+    }
+
+    private static String getName(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0)
+            return null;
+        String name = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return name;
+    }
+
+    private static void writeName(DataOutputStream out, String name) throws IOException {
+        byte[] bytes = bytes(name);
+        out.writeInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null)
+            out.write(bytes);
+    }
+
+    private static String readName(MappedInput in, Path path) throws IOException {
+        if (!in.ensure(4))
+            throw new IOException("Truncated person snapshot: " + path);
+        int length = in.buffer.getInt();
+        if (length < 0)
+            return null;
+        if (!in.ensure(length))
+            throw new IOException("Truncated person snapshot: " + path);
+        byte[] bytes = new byte[length];
+        in.buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Path path(String prefix, long number, String suffix) {
+        return directory.resolve(prefix + number + suffix);
+    }
+
+    private long latest(String prefix, String suffix) throws IOException {
+        List<Long> numbers = numbered(prefix, suffix);
+        return numbers.isEmpty() ? -1 : numbers.get(numbers.size() - 1);
+    }
+
+    private List<Long> numbered(String prefix, String suffix) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.valueOf(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException ex) {
+                    // not one of ours
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    //Reads a file through read-only mappings of up to 1GB, moving the window forward when a read would cross it
+    private static final class MappedInput implements Closeable {
+        private final FileChannel channel;
+        private final long size;
+        private long base;
+        private MappedByteBuffer buffer;
+
+        MappedInput(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            size = channel.size();
+            map(0);
+        }
+
+        long position() {
+            return base + buffer.position();
+        }
+
+        //Whether count more bytes are left in the file, remapping so they are all in the buffer
+        boolean ensure(int count) throws IOException {
+            if (buffer.remaining() >= count)
+                return true;
+            long position = position();
+            if (size - position < count)
+                return false;
+            map(position);
+            return true;
+        }
+
+        private void map(long position) throws IOException {
+            base = position;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
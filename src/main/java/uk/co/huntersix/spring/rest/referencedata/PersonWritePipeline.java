@@ -0,0 +1,208 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import uk.co.huntersix.spring.rest.Exception.TooManyRequestsException;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Applies the writes of PersonDataService on a single thread. Writers queue their mutation and get a future; the
+ * writer thread takes whatever has queued up, up to batchSize, applies it in order and tells the listeners once for
+ * the whole batch, so one write-ahead log sync covers it, before completing the futures. As the person locks are then
+ * only ever taken by one thread they are never contended, and batches grow by themselves while a sync is in progress.
+ * <p>
+ * A write is refused with TooManyRequestsException when capacity writes are already queued. The queue length, the
+ * batch sizes and the refused writes are published as person.write.queue, person.write.batch and
+ * person.writes.rejected with reason queue.
+ */
+public class PersonWritePipeline implements Closeable {
+    private final PersonDataService personDataService;
+    private final BlockingQueue<Write<?>> queue;
+    private final int batchSize;
+    private final LongAdder rejected = new LongAdder();
+    private final DistributionSummary batches;
+    private final Thread writer;
+
+    private volatile boolean closed;
+    //Set by the writer thread before it takes the last writes off the queue
+    private volatile boolean stopped;
+
+    public PersonWritePipeline(PersonDataService personDataService, int capacity, int batchSize,
+                               MeterRegistry meterRegistry) {
+        if (capacity < 1 || batchSize < 1)
+            throw new IllegalArgumentException("capacity and batchSize must be positive");
+        this.personDataService = personDataService;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.batches = DistributionSummary.builder("person.write.batch")
+                .description("Writes applied together and made durable by one group commit")
+                .register(meterRegistry);
+        Gauge.builder("person.write.queue", queue, BlockingQueue::size)
+                .description("Writes waiting for the writer thread")
+                .register(meterRegistry);
+        FunctionCounter.builder("person.writes.rejected", rejected, LongAdder::sum)
+                .tag("reason", "queue")
+                .description("Writes answered with 429 because the write queue was full")
+                .register(meterRegistry);
+        this.writer = new Thread(this::write, "person-writer");
+        writer.setDaemon(true);
+    }
+
+    /**
+     * Starts the writer thread and has PersonDataService send its writes here.
+     */
+    public void start() {
+        writer.start();
+        personDataService.useWritePipeline(this);
+    }
+
+    /**
+     * Queues a mutation for the writer thread without waiting.
+     *
+     * @return completed with what the mutation returns, or its exception, once the listeners have been told
+     * @throws TooManyRequestsException when the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> mutation) {
+        Write<T> write = new Write<>(mutation);
+        if (closed)
+            throw new IllegalStateException("Write pipeline is closed");
+        if (!queue.offer(write)) {
+            rejected.increment();
+            throw new TooManyRequestsException("Write queue is full");
+        }
+        checkQueued(write);
+        return write.future;
+    }
+
+    /**
+     * Queues a mutation for the writer thread, waiting for room in the queue when it is full, so a batch of writes
+     * goes in no faster than it is applied.
+     */
+    public <T> CompletableFuture<T> put(Supplier<T> mutation) {
+        Write<T> write = new Write<>(mutation);
+        if (closed)
+            throw new IllegalStateException("Write pipeline is closed");
+        try {
+            queue.put(write);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for the write queue");
+        }
+        checkQueued(write);
+        return write.future;
+    }
+
+    /**
+     * Stops taking writes, applies those already queued and stops the writer thread. Writes go straight to the
+     * repository again afterwards.
+     */
+    @Override
+    public void close() {
+        personDataService.useWritePipeline(null);
+        closed = true;
+        try {
+            queue.put(Write.STOP);
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the result of a queued write, rethrowing its exception as it was thrown
+     */
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            if (ex.getCause() instanceof Error)
+                throw (Error) ex.getCause();
+            throw ex;
+        }
+    }
+
+    //A write queued after the writer thread took its last ones off the queue would never complete
+    private void checkQueued(Write<?> write) {
+        if (stopped && queue.remove(write))
+            throw new IllegalStateException("Write pipeline is closed");
+    }
+
+    private void write() {
+        List<Write<?>> batch = new ArrayList<>(batchSize);
+        while (!stopped || !queue.isEmpty()) {
+            if (!stopped) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException ex) {
+                    stopped = true;
+                }
+            }
+            queue.drainTo(batch, batchSize - batch.size());
+            if (batch.remove(Write.STOP))
+                stopped = true;
+            apply(batch);
+            batch.clear();
+        }
+    }
+
+    private void apply(List<Write<?>> batch) {
+        if (batch.isEmpty())
+            return;
+        for (Write<?> write : batch)
+            write.apply();
+        RuntimeException unpublished = null;
+        try {
+            personDataService.changesPublished();
+        } catch (RuntimeException ex) {
+            unpublished = ex;
+        }
+        batches.record(batch.size());
+        for (Write<?> write : batch)
+            write.complete(unpublished);
+    }
+
+    private static final class Write<T> {
+        static final Write<Object> STOP = new Write<>(() -> null);
+
+        final Supplier<T> mutation;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        //Written and read by the writer thread only
+        T result;
+        Throwable failure;
+
+        Write(Supplier<T> mutation) {
+            this.mutation = mutation;
+        }
+
+        void apply() {
+            try {
+                result = mutation.get();
+            } catch (RuntimeException | Error ex) {
+                failure = ex;
+            }
+        }
+
+        //A write the listeners failed to take, e.g. to make durable, fails with their exception
+        void complete(RuntimeException unpublished) {
+            if (failure != null)
+                future.completeExceptionally(failure);
+            else if (unpublished != null)
+                future.completeExceptionally(unpublished);
+            else
+                future.complete(result);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package uk.co.huntersix.spring.rest;
+
+import org.junit.Test;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StartupConfigurationTest {
+
+    @Test
+    public void shouldMakeBeansLazy_exceptEagerAndStartedOnes() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerBeanDefinition("personController", bean());
+        beanFactory.registerBeanDefinition("personRepository", bean());
+        AbstractBeanDefinition pipeline = bean();
+        pipeline.setInitMethodName("start");
+        beanFactory.registerBeanDefinition("personWritePipeline", pipeline);
+
+        StartupConfiguration.lazyInitialization(new MockEnvironment()
+                .withProperty("person.startup.eager-beans", "personRepository"))
+                .postProcessBeanFactory(beanFactory);
+
+        assertThat(beanFactory.getBeanDefinition("personController").isLazyInit()).isTrue();
+        assertThat(beanFactory.getBeanDefinition("personRepository").isLazyInit()).isFalse();
+        assertThat(beanFactory.getBeanDefinition("personWritePipeline").isLazyInit()).isFalse();
+    }
+
+    private static AbstractBeanDefinition bean() {
+        return BeanDefinitionBuilder.genericBeanDefinition(Object.class).getBeanDefinition();
+    }
+}
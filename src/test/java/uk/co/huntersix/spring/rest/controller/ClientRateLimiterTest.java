@@ -0,0 +1,34 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClientRateLimiterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void shouldAdmitBurstThenRate_givenOneClient() {
+        ClientRateLimiter limiter = new ClientRateLimiter(10, 5);
+
+        for (int i = 0; i < 5; i++)
+            assertThat(limiter.tryAcquire("bulk", 0)).isZero();
+        assertThat(limiter.tryAcquire("bulk", 0)).isEqualTo(SECOND / 10);
+        assertThat(limiter.tryAcquire("bulk", SECOND / 10)).isZero();
+        assertThat(limiter.tryAcquire("bulk", SECOND / 10)).isPositive();
+        assertThat(limiter.tryAcquire("reader", SECOND / 10)).isZero();
+    }
+
+    @Test
+    public void shouldRefillBucket_whenClientIdle() {
+        ClientRateLimiter limiter = new ClientRateLimiter(10, 5);
+        for (int i = 0; i < 5; i++)
+            limiter.tryAcquire("bulk", 0);
+
+        for (int i = 0; i < 5; i++)
+            assertThat(limiter.tryAcquire("bulk", 10 * SECOND)).isZero();
+        assertThat(limiter.tryAcquire("bulk", 10 * SECOND)).isPositive();
+    }
+}
@@ -66,6 +66,17 @@ public class HttpRequestTest {
     }
 
 
+    @Test
+    public void shouldExposePrometheusMetrics() {
+        this.restTemplate.getForEntity(getBaseURI() + "/person/smith/nobody", String.class);
+
+        String metrics = this.restTemplate.getForObject(getBaseURI() + "/actuator/prometheus", String.class);
+
+        assertThat(metrics).contains("http_server_requests_seconds_bucket{exception=\"PersonNotFoundException\"",
+                "person_service_seconds_count", "person_errors_total{exception=\"PersonNotFoundException\",status=\"404\"",
+                "person_records", "person_index_keys{index=\"search\"", "cache_gets_total{cache=\"person.responses\"");
+    }
+
     @Test
     public void shouldReturnPersonList_whenPersonFound_givenLastName() {
         ResponseEntity<Person[]> resp = this.restTemplate.getForEntity(getBaseURI() + "/person/smith", Person[].class);
@@ -1,5 +1,8 @@
 package uk.co.huntersix.spring.rest.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -7,15 +10,27 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.util.StreamUtils;
 import uk.co.huntersix.spring.rest.Exception.PersonAlreadyExistException;
 import uk.co.huntersix.spring.rest.Exception.PersonNotFoundException;
+import uk.co.huntersix.spring.rest.Exception.PersonVersionMismatchException;
+import uk.co.huntersix.spring.rest.model.BatchResult;
 import uk.co.huntersix.spring.rest.model.Person;
 import uk.co.huntersix.spring.rest.referencedata.PersonDataService;
 
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.ArgumentMatchers.any;
@@ -45,6 +60,38 @@ public class PersonControllerTest {
                 .andExpect(jsonPath("lastName").value("Smith"));
     }
 
+    @Test
+    public void shouldReturnNotModified_givenMatchingIfNoneMatch() throws Exception {
+        when(personDataService.findPerson(any(), any())).thenReturn(new Person(7L, "Mary", "Smith", 2));
+        this.mockMvc.perform(get("/person/smith/mary"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"7-2\""));
+
+        this.mockMvc.perform(get("/person/smith/mary")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"7-2\""))
+                .andDo(print())
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"7-2\""))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    public void shouldChangeListEtag_whenAnyPersonChanges() throws Exception {
+        Person person1 = new Person(1L, "name1", "surname", 1);
+        Person person2 = new Person(2L, "name2", "surname", 1);
+        when(personDataService.findPerson(any())).thenReturn(Arrays.asList(person1, person2));
+        String etag = this.mockMvc.perform(get("/person/surname"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        this.mockMvc.perform(get("/person/surname").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        person2.setVersion(2);
+        this.mockMvc.perform(get("/person/surname").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
+    }
+
     @Test
     public void shouldThrownNotFoundError_whenPersonNotExist_givenFirstNameAndLastName() throws Exception {
         when(personDataService.findPerson(any(), any())).thenThrow(new PersonNotFoundException());
@@ -85,6 +132,189 @@ public class PersonControllerTest {
                 .andExpect(jsonPath("$[0].lastName", is("surname")));
     }
 
+    @Test
+    public void shouldReturnPersonAsCbor_givenCborAccept() throws Exception {
+        when(personDataService.findPerson(any(), any())).thenReturn(new Person(7L, "Mary", "Smith", 2));
+        byte[] body = this.mockMvc.perform(get("/person/smith/mary")
+                .accept(PersonController.CBOR_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(PersonController.CBOR_VALUE))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"7-2-cbor\""))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        Person person = new ObjectMapper(new CBORFactory()).readValue(body, Person.class);
+        assertThat(person.getId()).isEqualTo(7L);
+        assertThat(person.getFirstName()).isEqualTo("Mary");
+        assertThat(person.getLastName()).isEqualTo("Smith");
+    }
+
+    @Test
+    public void shouldReturnPeopleAsSmile_givenSmileAccept() throws Exception {
+        when(personDataService.findPerson(any())).thenReturn(Arrays.asList(
+                new Person(1L, "name1", "surname"), new Person(2L, "name2", "surname")));
+        String jsonEtag = this.mockMvc.perform(get("/person/surname"))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        byte[] body = this.mockMvc.perform(get("/person/surname")
+                .accept(PersonController.SMILE_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(PersonController.SMILE_VALUE))
+                .andExpect(header().string(HttpHeaders.ETAG,
+                        jsonEtag.substring(0, jsonEtag.length() - 1) + "-x-jackson-smile\""))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        Person[] people = new ObjectMapper(new SmileFactory()).readValue(body, Person[].class);
+        assertThat(people).extracting(Person::getFirstName).containsExactly("name1", "name2");
+    }
+
+    @Test
+    public void shouldTagEachEncodedFormat_givenAcceptOfBoth() throws Exception {
+        when(personDataService.findPerson(any(), any())).thenReturn(new Person(7L, "Mary", "Smith", 2));
+        this.mockMvc.perform(get("/person/smith/mary")
+                .header(HttpHeaders.ACCEPT, "application/x-jackson-smile;q=0.5, application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(PersonController.CBOR_VALUE))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"7-2-cbor\""));
+
+        this.mockMvc.perform(get("/person/smith/mary")
+                .accept(PersonController.SMILE_VALUE)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"7-2-cbor\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"7-2-x-jackson-smile\""));
+        this.mockMvc.perform(get("/person/smith/mary")
+                .accept(PersonController.CBOR_VALUE)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"7-2-cbor\""))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void shouldGzipPeople_givenLargeListAndGzipAcceptEncoding() throws Exception {
+        List<Person> surnames = new ArrayList<>();
+        for (long id = 1; id <= 100; id++)
+            surnames.add(new Person(id, "name" + id, "surname"));
+        when(personDataService.findPerson(any())).thenReturn(surnames);
+
+        MockHttpServletResponse identity = this.mockMvc.perform(get("/person/surname"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andReturn().getResponse();
+        byte[] plain = identity.getContentAsByteArray();
+        MockHttpServletResponse compressed = this.mockMvc.perform(get("/person/surname")
+                .header(HttpHeaders.ACCEPT_ENCODING, "deflate, gzip;q=0.8"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, "Accept, Accept-Encoding"))
+                .andReturn().getResponse();
+        byte[] gzipped = compressed.getContentAsByteArray();
+        String etag = identity.getHeader(HttpHeaders.ETAG);
+        String gzipEtag = compressed.getHeader(HttpHeaders.ETAG);
+
+        assertThat(gzipEtag).isEqualTo(etag.substring(0, etag.length() - 1) + "-gzip\"");
+        this.mockMvc.perform(get("/person/surname")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .header(HttpHeaders.IF_NONE_MATCH, gzipEtag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, gzipEtag));
+        this.mockMvc.perform(get("/person/surname")
+                .header(HttpHeaders.IF_NONE_MATCH, gzipEtag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+
+        assertThat(gzipped.length).isLessThan(plain.length / 4);
+        assertThat(StreamUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(gzipped))))
+                .isEqualTo(plain);
+        this.mockMvc.perform(get("/person/surname")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0"))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void shouldNotGzipPerson_givenBodyUnderMinimumSize() throws Exception {
+        when(personDataService.findPerson(any(), any())).thenReturn(new Person(7L, "Mary", "Smith", 2));
+        this.mockMvc.perform(get("/person/smith/mary")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(jsonPath("firstName").value("Mary"));
+    }
+
+    @Test
+    public void shouldReturnPageWithNextLink_givenLastNameAndLimit() throws Exception {
+        Person person1 = new Person("name1", "surname");
+        Person person2 = new Person("name2", "surname");
+        Person person3 = new Person("name3", "surname");
+
+        when(personDataService.findPersonPage("surname", null, 3)).thenReturn(Arrays.asList(person1, person2, person3));
+        this.mockMvc.perform(get("/person/surname").param("limit", "2"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].firstName", is("name2")))
+                .andExpect(header().string("Link", "</person/surname?limit=2&after=" + person2.getId() + ">; rel=\"next\""));
+    }
+
+    @Test
+    public void shouldReturnLastPageWithoutNextLink_givenAfterId() throws Exception {
+        Person person3 = new Person("name3", "surname");
+
+        when(personDataService.findPersonPage("surname", 2L, 3)).thenReturn(Arrays.asList(person3));
+        this.mockMvc.perform(get("/person/surname").param("limit", "2").param("after", "2"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(header().doesNotExist("Link"));
+    }
+
+    @Test
+    public void shouldRejectPage_givenNonPositiveLimit() throws Exception {
+        this.mockMvc.perform(get("/person/surname").param("limit", "0"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldStreamPeopleAsNdjson_givenLastName() throws Exception {
+        Person person1 = new Person("name1", "surname");
+        Person person2 = new Person("name2", "surname");
+
+        when(personDataService.iteratePerson("surname")).thenReturn(Arrays.asList(person1, person2).iterator());
+        MvcResult result = this.mockMvc.perform(get("/person/surname").accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String[] lines = this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString().split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[1]).contains("\"firstName\":\"name2\"");
+    }
+
+    @Test
+    public void shouldStreamPeopleAsJsonArray_givenLastName() throws Exception {
+        Person person1 = new Person("name1", "surname");
+        Person person2 = new Person("name2", "surname");
+
+        when(personDataService.iteratePerson("surname")).thenReturn(Arrays.asList(person1, person2).iterator());
+        MvcResult result = this.mockMvc.perform(get("/person/surname").param("stream", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].firstName", is("name1")));
+    }
+
+    @Test
+    public void shouldThrownNotFoundErrorForStream_whenPersonNotExist_givenLastName() throws Exception {
+        when(personDataService.iteratePerson(any())).thenThrow(new PersonNotFoundException());
+        this.mockMvc.perform(get("/person/surname").accept("application/x-ndjson"))
+                .andDo(print())
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     public void shouldThrownNotFoundError_whenPersonNotExist_givenLastName() throws Exception {
         when(personDataService.findPerson(any(), any())).thenThrow(new PersonNotFoundException("message"));
@@ -111,6 +341,23 @@ public class PersonControllerTest {
     }
 
 
+    @Test
+    public void shouldAddPerson_givenSmileBody() throws Exception {
+        ObjectMapper smile = new ObjectMapper(new SmileFactory());
+        when(personDataService.addPerson(any(Person.class)))
+                .thenAnswer(invocation -> new Person(3L, invocation.<Person>getArgument(0).getFirstName(), "lastname"));
+
+        byte[] body = this.mockMvc.perform(post("/person")
+                .content(smile.writeValueAsBytes(new Person("firstname", "lastname")))
+                .contentType(PersonController.SMILE_VALUE)
+                .accept(PersonController.SMILE_VALUE))
+                .andExpect(status().isCreated())
+                .andExpect(content().contentType(PersonController.SMILE_VALUE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertThat(smile.readValue(body, Person.class).getFirstName()).isEqualTo("firstname");
+    }
+
     @Test
     public void shouldThrowException_givenDublicateFirstNameAndLastName() throws Exception {
 
@@ -123,6 +370,93 @@ public class PersonControllerTest {
                 .andExpect(status().is(409));
     }
 
+    @Test
+    public void shouldAddPeopleInBatch_givenJsonArray() throws Exception {
+        List<String> firstNames = new ArrayList<>();
+        when(personDataService.addPeople(any())).thenAnswer(invocation -> {
+            Iterator<Person> people = invocation.getArgument(0);
+            people.forEachRemaining(person -> firstNames.add(person.getFirstName()));
+            return Arrays.asList(new BatchResult(BatchResult.Status.CREATED, 7L),
+                    new BatchResult(BatchResult.Status.CONFLICT, 1L));
+        });
+
+        this.mockMvc.perform(post("/person/batch")
+                .content("[{\"firstName\":\"a\",\"lastName\":\"x\"},{\"firstName\":\"b\",\"lastName\":\"x\"}]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status", is("CREATED")))
+                .andExpect(jsonPath("$[0].id", is(7)))
+                .andExpect(jsonPath("$[1].status", is("CONFLICT")));
+        assertThat(firstNames).containsExactly("a", "b");
+    }
+
+    @Test
+    public void shouldAddPeopleInBatch_givenNdjson() throws Exception {
+        List<String> firstNames = new ArrayList<>();
+        when(personDataService.addPeople(any())).thenAnswer(invocation -> {
+            Iterator<Person> people = invocation.getArgument(0);
+            people.forEachRemaining(person -> firstNames.add(person.getFirstName()));
+            return Collections.emptyList();
+        });
+
+        this.mockMvc.perform(post("/person/batch")
+                .content("{\"firstName\":\"a\",\"lastName\":\"x\"}\n{\"firstName\":\"b\",\"lastName\":\"x\"}\n")
+                .contentType("application/x-ndjson"))
+                .andDo(print())
+                .andExpect(status().isOk());
+        assertThat(firstNames).containsExactly("a", "b");
+    }
+
+    @Test
+    public void shouldRejectBatch_givenMalformedBody() throws Exception {
+        when(personDataService.addPeople(any())).thenAnswer(invocation -> {
+            Iterator<Person> people = invocation.getArgument(0);
+            people.forEachRemaining(person -> {
+            });
+            return Collections.emptyList();
+        });
+
+        this.mockMvc.perform(post("/person/batch")
+                .content("[{\"firstName\":")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldUpdatePeopleInBatch_givenJsonArray() throws Exception {
+        when(personDataService.updatePeople(any())).thenReturn(Arrays.asList(
+                new BatchResult(BatchResult.Status.UPDATED, 1L),
+                new BatchResult(BatchResult.Status.NOT_FOUND, 99L)));
+
+        this.mockMvc.perform(patch("/person/batch")
+                .content("[{\"id\":1,\"firstName\":\"Esen\"},{\"id\":99,\"firstName\":\"Esen\"}]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status", is("UPDATED")))
+                .andExpect(jsonPath("$[1].status", is("NOT_FOUND")));
+    }
+
+    @Test
+    public void shouldDeletePeopleInBatch_givenIds() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        when(personDataService.deletePeople(any())).thenAnswer(invocation -> {
+            Iterator<Long> requested = invocation.getArgument(0);
+            requested.forEachRemaining(ids::add);
+            return Collections.singletonList(new BatchResult(BatchResult.Status.DELETED, 1L));
+        });
+
+        this.mockMvc.perform(delete("/person/batch")
+                .content("[1, 2]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status", is("DELETED")));
+        assertThat(ids).containsExactly(1L, 2L);
+    }
+
     @Test
     public void shouldUpdatePersonFirstName_givenId() throws Exception {
         Person updatedPerson = new Person("Esen", "lastname");
@@ -138,6 +472,60 @@ public class PersonControllerTest {
     }
 
 
+    @Test
+    public void shouldUpdatePersonFirstName_givenCborBody() throws Exception {
+        when(personDataService.updatePerson(eq(1L), eq("Esen"))).thenReturn(new Person(1L, "Esen", "lastname"));
+
+        this.mockMvc.perform(patch("/person/1")
+                .content(new ObjectMapper(new CBORFactory()).writeValueAsBytes(Collections.singletonMap("firstName", "Esen")))
+                .contentType(PersonController.CBOR_VALUE)
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.firstName", is("Esen")));
+    }
+
+    @Test
+    public void shouldUpdateConditionally_givenIfMatch() throws Exception {
+        when(personDataService.updatePerson(1L, "Esen", 2L)).thenReturn(new Person(1L, "Esen", "lastname", 3));
+
+        this.mockMvc.perform(patch("/person/1")
+                .content("{\"firstName\" : \"Esen\"}")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "\"1-2\""))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1-3\""));
+    }
+
+    @Test
+    public void shouldUpdateConditionally_givenIfMatchOfGzippedBody() throws Exception {
+        when(personDataService.updatePerson(1L, "Esen", 2L)).thenReturn(new Person(1L, "Esen", "lastname", 3));
+
+        this.mockMvc.perform(patch("/person/1")
+                .content("{\"firstName\" : \"Esen\"}")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "\"1-2-gzip\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1-3\""));
+    }
+
+    @Test
+    public void shouldRejectUpdate_givenStaleOrForeignIfMatch() throws Exception {
+        when(personDataService.updatePerson(1L, "Esen", 1L)).thenThrow(new PersonVersionMismatchException());
+
+        this.mockMvc.perform(patch("/person/1")
+                .content("{\"firstName\" : \"Esen\"}")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "\"1-1\""))
+                .andExpect(status().isPreconditionFailed());
+        this.mockMvc.perform(patch("/person/1")
+                .content("{\"firstName\" : \"Esen\"}")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "W/\"1-2\""))
+                .andExpect(status().isPreconditionFailed());
+        verify(personDataService, never()).updatePerson(1L, "Esen", 2L);
+    }
+
     @Test
     public void shouldThrowException_whenPersonNotExist_givenId() throws Exception {
 
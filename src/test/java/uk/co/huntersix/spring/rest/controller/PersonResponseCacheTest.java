@@ -0,0 +1,148 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+import uk.co.huntersix.spring.rest.Exception.PersonNotFoundException;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.model.PersonChange;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class PersonResponseCacheTest {
+    private final PersonResponseCache cache = new PersonResponseCache(1 << 20, 0);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void shouldLoadOnce_givenNamesDifferingInCase() throws IOException {
+        cache.person("Smith", "Mary", body("mary"));
+        JsonResponse cached = cache.person("SMITH", "mary", body("other"));
+
+        assertThat(firstName(cached)).isEqualTo("mary");
+        assertThat(loads).hasValue(1);
+        assertThat(cache.statistics().getHitCount()).isEqualTo(1);
+        assertThat(cache.statistics().getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldInvalidateOnlyTouchedKeys_whenFirstNameUpdated() throws IOException {
+        cache.person("Smith", "Mary", body("mary"));
+        cache.person("Smith", "Maria", body("maria"));
+        cache.person("Smith", "John", body("john"));
+        cache.people("Smith", body("smiths"));
+        cache.people("Archer", body("archers"));
+
+        Person maria = new Person(1L, "Maria", "Smith");
+        cache.personChanged(new PersonChange(PersonChange.Type.UPDATED, maria, "Mary"));
+        loads.set(0);
+
+        assertThat(firstName(cache.person("smith", "mary", body("mary2")))).isEqualTo("mary2");
+        assertThat(firstName(cache.person("smith", "maria", body("maria2")))).isEqualTo("maria2");
+        assertThat(firstName(cache.people("smith", body("smiths2")))).isEqualTo("smiths2");
+        assertThat(firstName(cache.person("smith", "john", body("john2")))).isEqualTo("john");
+        assertThat(firstName(cache.people("archer", body("archers2")))).isEqualTo("archers");
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    public void shouldNotCacheFailedLookups() {
+        Supplier<JsonResponse> notFound = () -> {
+            loads.incrementAndGet();
+            throw new PersonNotFoundException();
+        };
+
+        assertThat(catchThrowable(() -> cache.people("Brown", notFound))).isInstanceOf(PersonNotFoundException.class);
+        assertThat(catchThrowable(() -> cache.people("Brown", notFound))).isInstanceOf(PersonNotFoundException.class);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    public void shouldShareOneLoad_givenConcurrentMisses() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService requests = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<JsonResponse>> responses = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                responses.add(requests.submit(() -> cache.person("Smith", "Mary", () -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    return JsonResponse.of(new Person(1L, "Mary", "Smith"), objectMapper);
+                })));
+            }
+            while (cache.coalesced() < 3)
+                Thread.sleep(1);
+            release.countDown();
+
+            for (Future<JsonResponse> response : responses)
+                assertThat(response.get()).isSameAs(responses.get(0).get());
+            assertThat(loads).hasValue(1);
+        } finally {
+            requests.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldInvalidateLoadInProgress() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService requests = Executors.newSingleThreadExecutor();
+        try {
+            Future<JsonResponse> stale = requests.submit(() -> cache.person("Smith", "Mary", () -> {
+                loading.countDown();
+                await(release);
+                return JsonResponse.of(new Person(1L, "Mary", "Smith"), objectMapper);
+            }));
+            loading.await();
+            cache.personChanged(new PersonChange(PersonChange.Type.UPDATED, new Person(1L, "Mary", "Smith"), null));
+            release.countDown();
+            stale.get();
+
+            assertThat(firstName(cache.person("Smith", "Mary", body("fresh")))).isEqualTo("fresh");
+        } finally {
+            requests.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldEvictBySize() {
+        PersonResponseCache small = new PersonResponseCache(64 * 1024, 0);
+        for (int i = 0; i < 100; i++) {
+            small.people("Last" + i, body(StringUtils.repeat("x", 4096)));
+        }
+        small.people("Last0", body("x"));
+
+        assertThat(small.statistics().getWeightedSize()).isLessThanOrEqualTo(64 * 1024);
+        assertThat(small.statistics().getEvictionCount()).isGreaterThan(0);
+    }
+
+    private Supplier<JsonResponse> body(String firstName) {
+        return () -> {
+            loads.incrementAndGet();
+            return JsonResponse.of(new Person(1L, firstName, "Smith"), objectMapper);
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private String firstName(JsonResponse response) throws IOException {
+        return objectMapper.readValue(response.getBody(), Person.class).getFirstName();
+    }
+}
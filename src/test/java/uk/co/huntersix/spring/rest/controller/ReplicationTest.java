@@ -0,0 +1,100 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import uk.co.huntersix.spring.rest.Application;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.referencedata.PersonDataService;
+import uk.co.huntersix.spring.rest.referencedata.PersonReplicaFollower;
+
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//A leader and a follower node in one JVM, talking over HTTP on random ports
+public class ReplicationTest {
+    private static ConfigurableApplicationContext leader;
+    private static ConfigurableApplicationContext follower;
+    private static String leaderUrl;
+    private static String followerUrl;
+    private final TestRestTemplate restTemplate = new TestRestTemplate();
+
+    @BeforeClass
+    public static void startNodes() {
+        leader = node("server.port=0");
+        leaderUrl = "http://localhost:" + leader.getEnvironment().getProperty("local.server.port");
+        follower = node("server.port=0", "person.replication.leader-url=" + leaderUrl,
+                "person.replication.poll-wait-ms=1000");
+        followerUrl = "http://localhost:" + follower.getEnvironment().getProperty("local.server.port");
+    }
+
+    @AfterClass
+    public static void stopNodes() {
+        if (follower != null)
+            follower.close();
+        if (leader != null)
+            leader.close();
+    }
+
+    @Test
+    public void shouldServeLeaderData_givenFollowerStarted() {
+        assertThat(restTemplate.getForObject(followerUrl + "/person/smith/mary", Person.class).getFirstName())
+                .isEqualTo("Mary");
+    }
+
+    @Test
+    public void shouldReplicateAddUpdateAndDelete_givenWritesOnLeader() {
+        ResponseEntity<Person> added = restTemplate.postForEntity(leaderUrl + "/person",
+                new Person(null, "Ada", "Replica"), Person.class);
+        assertThat(added.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        Long id = added.getBody().getId();
+
+        eventually(() -> restTemplate.getForEntity(followerUrl + "/person/replica/ada", Person.class)
+                .getStatusCode() == HttpStatus.OK);
+        //The JDK client behind TestRestTemplate can't send PATCH
+        leader.getBean(PersonDataService.class).updatePerson(id, "Augusta");
+        eventually(() -> restTemplate.getForEntity(followerUrl + "/person/replica/augusta", Person.class)
+                .getStatusCode() == HttpStatus.OK);
+        assertThat(restTemplate.getForEntity(followerUrl + "/person/replica/ada", String.class).getStatusCode())
+                .isEqualTo(HttpStatus.NOT_FOUND);
+
+        restTemplate.delete(leaderUrl + "/person/" + id);
+        eventually(() -> restTemplate.getForEntity(followerUrl + "/person/replica", String.class)
+                .getStatusCode() == HttpStatus.NOT_FOUND);
+        assertThat(follower.getBean(PersonReplicaFollower.class).behind()).isZero();
+    }
+
+    @Test
+    public void shouldRedirectWritesToLeader_givenFollower() {
+        ResponseEntity<String> response = restTemplate.postForEntity(followerUrl + "/person",
+                new Person(null, "Grace", "Redirect"), String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.TEMPORARY_REDIRECT);
+        assertThat(response.getHeaders().getLocation().toString()).isEqualTo(leaderUrl + "/person");
+    }
+
+    private static ConfigurableApplicationContext node(String... properties) {
+        return new SpringApplicationBuilder(Application.class)
+                .properties("spring.jmx.enabled=false")
+                .properties(properties)
+                .run();
+    }
+
+    private static void eventually(Supplier<Boolean> condition) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.get()) {
+            assertThat(System.currentTimeMillis()).as("replicated within 10s").isLessThan(deadline);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import uk.co.huntersix.spring.rest.model.NameMatch;
+import uk.co.huntersix.spring.rest.referencedata.PersonNameIndex;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(SearchController.class)
+public class SearchControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private PersonNameIndex personNameIndex;
+
+    @Test
+    public void shouldSearchByPrefix_givenTrailingWildcard() throws Exception {
+        when(personNameIndex.findByPrefix("Smi", 10))
+                .thenReturn(Collections.singletonList(new NameMatch("Smith", 2, 0)));
+
+        this.mockMvc.perform(get("/search/person").param("lastName", "Smi*"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].lastName", is("Smith")))
+                .andExpect(jsonPath("$[0].count", is(2)));
+    }
+
+    @Test
+    public void shouldSearchSimilarWithEditsByLength_givenName() throws Exception {
+        when(personNameIndex.findSimilar(any(), anyInt(), anyInt())).thenReturn(Collections.emptyList());
+
+        this.mockMvc.perform(get("/search/person").param("lastName", "Smiht").param("limit", "5000"))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(get("/search/person").param("lastName", "Smiht").param("maxEdits", "3"))
+                .andExpect(status().isBadRequest());
+
+        verify(personNameIndex).findSimilar("Smiht", 1, SearchController.MAX_RESULTS);
+    }
+}
@@ -0,0 +1,57 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import org.junit.Test;
+import uk.co.huntersix.spring.rest.Exception.PersonNotFoundException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class SingleFlightTest {
+    private final SingleFlight<String, String> flights = new SingleFlight<>();
+    private final AtomicInteger computations = new AtomicInteger();
+
+    @Test
+    public void shouldShareOneFailure_givenConcurrentCallers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PersonNotFoundException notFound = new PersonNotFoundException();
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                results.add(callers.submit(() -> flights.get("smith", () -> {
+                    computations.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                    throw notFound;
+                })));
+            }
+            while (flights.coalesced() < 2)
+                Thread.sleep(1);
+            release.countDown();
+
+            for (Future<String> result : results)
+                assertThat(catchThrowable(result::get)).hasCause(notFound);
+            assertThat(computations).hasValue(1);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldComputeAgain_whenPreviousComputationFinished() {
+        assertThat(flights.get("smith", () -> "first " + computations.incrementAndGet())).isEqualTo("first 1");
+        assertThat(flights.get("smith", () -> "second " + computations.incrementAndGet())).isEqualTo("second 2");
+        assertThat(flights.coalesced()).isZero();
+    }
+}
@@ -0,0 +1,116 @@
+package uk.co.huntersix.spring.rest.controller;
+
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import uk.co.huntersix.spring.rest.Exception.TooManyRequestsException;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class WriteAdmissionInterceptorTest {
+    private static final Set<String> KEYS = new HashSet<>(Arrays.asList("bulk", "other"));
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void shouldRejectWithRetryAfter_whenClientOverRate() {
+        WriteAdmissionInterceptor interceptor = new WriteAdmissionInterceptor(
+                new ClientRateLimiter(0.5, 1), KEYS, 10, 0, clock::get);
+        complete(interceptor, admit(interceptor, request("POST", "bulk")));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(catchThrowable(() -> interceptor.preHandle(request("POST", "bulk"), response, null)))
+                .isInstanceOf(TooManyRequestsException.class);
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+        assertThat(interceptor.rateLimited()).isEqualTo(1);
+        assertThat(admit(interceptor, request("POST", "other"))).isNotNull();
+        assertThat(admit(interceptor, request("GET", "bulk"))).isNotNull();
+    }
+
+    @Test
+    public void shouldLimitByAddress_givenUnknownApiKeys() {
+        WriteAdmissionInterceptor interceptor = new WriteAdmissionInterceptor(
+                new ClientRateLimiter(0.5, 2), KEYS, 10, 0, clock::get);
+        complete(interceptor, admit(interceptor, request("POST", "made-up-1")));
+        complete(interceptor, admit(interceptor, request("POST", "made-up-2")));
+
+        for (int i = 3; i < 10; i++) {
+            MockHttpServletRequest request = request("POST", "made-up-" + i);
+            assertThat(catchThrowable(() -> interceptor.preHandle(request, new MockHttpServletResponse(), null)))
+                    .isInstanceOf(TooManyRequestsException.class);
+        }
+        assertThat(interceptor.rateLimited()).isEqualTo(7);
+        MockHttpServletRequest elsewhere = request("POST", "made-up-10");
+        elsewhere.setRemoteAddr("10.0.0.2");
+        assertThat(admit(interceptor, elsewhere)).isNotNull();
+        assertThat(admit(interceptor, request("POST", "bulk"))).isNotNull();
+    }
+
+    @Test
+    public void shouldShedWrites_whenConcurrencyLimitReached() {
+        WriteAdmissionInterceptor interceptor = new WriteAdmissionInterceptor(null, KEYS, 2, 0, clock::get);
+        MockHttpServletRequest first = admit(interceptor, request("PATCH", "a"));
+        admit(interceptor, request("DELETE", "b"));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(catchThrowable(() -> interceptor.preHandle(request("POST", "c"), response, null)))
+                .isInstanceOf(TooManyRequestsException.class);
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(interceptor.inFlight()).isEqualTo(2);
+        complete(interceptor, first);
+        assertThat(interceptor.inFlight()).isEqualTo(1);
+        assertThat(admit(interceptor, request("POST", "c"))).isNotNull();
+        assertThat(interceptor.shed()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldAdmitEveryWrite_givenNoLimits() {
+        WriteAdmissionInterceptor interceptor = new WriteAdmissionInterceptor(null, KEYS, 0, 0, clock::get);
+
+        for (int i = 0; i < 1000; i++)
+            admit(interceptor, request("POST", "bulk"));
+        assertThat(interceptor.inFlight()).isEqualTo(1000);
+        assertThat(interceptor.rateLimited()).isZero();
+        assertThat(interceptor.shed()).isZero();
+    }
+
+    @Test
+    public void shouldLowerConcurrencyLimit_whileLatencyOverBound() {
+        long bound = TimeUnit.MILLISECONDS.toNanos(100);
+        WriteAdmissionInterceptor interceptor = new WriteAdmissionInterceptor(null, KEYS, 40, bound, clock::get);
+
+        for (int i = 0; i < 50; i++) {
+            MockHttpServletRequest request = admit(interceptor, request("POST", "bulk"));
+            clock.addAndGet(4 * bound);
+            complete(interceptor, request);
+        }
+        assertThat(interceptor.concurrencyLimit()).isBetween(10, 11);
+
+        for (int i = 0; i < 200; i++)
+            complete(interceptor, admit(interceptor, request("POST", "bulk")));
+        assertThat(interceptor.concurrencyLimit()).isEqualTo(40);
+    }
+
+    private static MockHttpServletRequest request(String method, String apiKey) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, "/person");
+        request.addHeader(WriteAdmissionInterceptor.API_KEY, apiKey);
+        return request;
+    }
+
+    private static MockHttpServletRequest admit(WriteAdmissionInterceptor interceptor,
+                                                MockHttpServletRequest request) {
+        assertThat(interceptor.preHandle(request, new MockHttpServletResponse(), null)).isTrue();
+        return request;
+    }
+
+    private static void complete(WriteAdmissionInterceptor interceptor, MockHttpServletRequest request) {
+        interceptor.afterCompletion(request, new MockHttpServletResponse(), null, null);
+    }
+}
@@ -0,0 +1,118 @@
+package uk.co.huntersix.spring.rest.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IdGeneratorTest {
+
+    @Test
+    public void shouldCountUpPastReservedIds_givenSequence() {
+        SequenceIdGenerator ids = new SequenceIdGenerator();
+
+        assertThat(ids.nextId()).isEqualTo(1);
+        ids.reserve(41);
+        assertThat(ids.nextId()).isEqualTo(42);
+        assertThat(ids.lastAssignedId()).isEqualTo(42);
+    }
+
+    @Test
+    public void shouldHandOutUniqueIdsRisingPerStripe_givenBlocks() throws InterruptedException {
+        BlockIdGenerator ids = new BlockIdGenerator(16, 4);
+        ids.reserve(100);
+        long[][] assigned = new long[8][10_000];
+        List<Thread> threads = new ArrayList<>();
+        for (long[] perThread : assigned) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perThread.length; i++)
+                    perThread[i] = ids.nextId();
+            }));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        Set<Long> seen = new HashSet<>();
+        for (long[] perThread : assigned) {
+            assertThat(perThread[0]).isGreaterThan(100);
+            for (int i = 0; i < perThread.length; i++) {
+                assertThat(seen.add(perThread[i])).isTrue();
+                if (i > 0)
+                    assertThat(perThread[i]).isGreaterThan(perThread[i - 1]);
+            }
+        }
+        assertThat(ids.lastAssignedId()).isGreaterThanOrEqualTo(seen.stream().mapToLong(Long::longValue).max().getAsLong());
+    }
+
+    @Test
+    public void shouldNeverHandOutReservedId_givenReservationsWhileAssigning() throws InterruptedException {
+        BlockIdGenerator ids = new BlockIdGenerator(4, 2);
+        AtomicLong reservedSoFar = new AtomicLong();
+        AtomicLong clashes = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    long floor = reservedSoFar.get();
+                    if (ids.nextId() <= floor)
+                        clashes.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        //Each reservation reaches into the blocks the stripes are using
+        while (threads.stream().anyMatch(Thread::isAlive)) {
+            long maxId = ids.lastAssignedId() - 2;
+            ids.reserve(maxId);
+            reservedSoFar.accumulateAndGet(maxId, Math::max);
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertThat(clashes.get()).isZero();
+    }
+
+    @Test
+    public void shouldRiseWithinAndAcrossMilliseconds_givenSnowflake() {
+        AtomicLong clock = new AtomicLong(SnowflakeIdGenerator.EPOCH_MILLIS + 1_000);
+        SnowflakeIdGenerator ids = new SnowflakeIdGenerator(5, clock::get);
+        Set<Long> seen = new HashSet<>();
+
+        long previous = 0;
+        for (int i = 0; i < 5_000; i++) {
+            long id = ids.nextId();
+            assertThat(id).isGreaterThan(previous);
+            assertThat(SnowflakeIdGenerator.node(id)).isEqualTo(5);
+            seen.add(previous = id);
+        }
+        assertThat(SnowflakeIdGenerator.millis(previous)).isEqualTo(clock.get() + 1);
+
+        clock.addAndGet(-500);
+        assertThat(ids.nextId()).isGreaterThan(previous);
+        clock.addAndGet(1_000);
+        assertThat(SnowflakeIdGenerator.millis(ids.nextId())).isEqualTo(clock.get());
+        assertThat(seen).hasSize(5_000);
+    }
+
+    @Test
+    public void shouldNotClash_givenTwoNodesInSameMillisecond() {
+        SnowflakeIdGenerator first = new SnowflakeIdGenerator(1, () -> SnowflakeIdGenerator.EPOCH_MILLIS);
+        SnowflakeIdGenerator second = new SnowflakeIdGenerator(2, () -> SnowflakeIdGenerator.EPOCH_MILLIS);
+        Set<Long> seen = new HashSet<>();
+
+        for (int i = 0; i < 5_000; i++) {
+            assertThat(seen.add(first.nextId())).isTrue();
+            assertThat(seen.add(second.nextId())).isTrue();
+        }
+        second.reserve(first.lastAssignedId());
+        assertThat(second.nextId()).isGreaterThan(first.lastAssignedId());
+    }
+}
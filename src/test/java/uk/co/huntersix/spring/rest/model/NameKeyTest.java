@@ -0,0 +1,33 @@
+package uk.co.huntersix.spring.rest.model;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NameKeyTest {
+    @Test
+    public void shouldMatchLikeEqualsIgnoreCase() {
+        assertThat(NameKey.of("SmItH", "MARY")).isEqualTo(NameKey.of("smith", "mary"))
+                .hasSameHashCodeAs(NameKey.of("smith", "mary"));
+        assertThat(NameKey.of("STRASSE")).isNotEqualTo(NameKey.of("straße"));
+        assertThat(NameKey.of("İstanbul")).isEqualTo(NameKey.of("istanbul"))
+                .hasSameHashCodeAs(NameKey.of("istanbul"));
+        assertThat("İstanbul".equalsIgnoreCase("istanbul")).isTrue();
+        assertThat(NameKey.of("smith", "mary")).isNotEqualTo(NameKey.of("smith", "maryann"));
+    }
+
+    @Test
+    public void shouldKeepLastNameKeysApartFromFullNameKeys() {
+        assertThat(NameKey.of("smith")).isNotEqualTo(NameKey.of("smith", ""));
+        assertThat(NameKey.of("smith", null)).isEqualTo(NameKey.of("smith", ""));
+        assertThat(NameKey.of(null)).isEqualTo(NameKey.of(""));
+        assertThat(NameKey.of("Smith", "Mary").lastNameKey()).isEqualTo(NameKey.of("SMITH"));
+    }
+
+    @Test
+    public void shouldFoldLikeEqualsIgnoreCase() {
+        assertThat(NameKey.fold("SmItH")).isEqualTo("smith");
+        assertThat(NameKey.fold("smith")).isSameAs("smith");
+        assertThat(NameKey.fold(null)).isNull();
+    }
+}
@@ -28,4 +28,17 @@ public class PersonTest {
 
         assertNotSame(classUnderTest1, classUnderTest2);
     }
+
+    @Test
+    public void copyShouldKeepNamesAndVersionWhenRenamed() {
+        Person person = new Person(7L, "John", "Smith", 3);
+        Person copy = person.copy();
+
+        person.rename("Jack");
+
+        assertEquals("John", copy.getFirstName());
+        assertEquals(3, copy.getVersion());
+        assertEquals("Jack", person.getFirstName());
+        assertEquals(4, person.getVersion());
+    }
 }
@@ -0,0 +1,146 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.huntersix.spring.rest.Exception.PersonVersionMismatchException;
+import uk.co.huntersix.spring.rest.model.Person;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class CompactPersonRepositoryTest {
+    private CompactPersonRepository repository;
+    private Person mary;
+    private Person john;
+
+    @Before
+    public void setUp() {
+        repository = new CompactPersonRepository();
+        mary = new Person("Mary", "Smith");
+        john = new Person("John", "Smith");
+        repository.add(mary);
+        repository.add(john);
+        repository.add(new Person("Brian", "Archer"));
+    }
+
+    @Test
+    public void shouldReturnCopies_givenNameIgnoringCase() {
+        Person found = repository.findByName("SMITH", "mary");
+
+        assertThat(found).isNotSameAs(mary);
+        assertThat(found.getId()).isEqualTo(mary.getId());
+        assertThat(found.getFirstName()).isEqualTo("Mary");
+        assertThat(found.getLastName()).isEqualTo("Smith");
+    }
+
+    @Test
+    public void shouldPageLastNameInIdOrder() {
+        assertThat(repository.findByLastName("smith")).extracting(Person::getFirstName).containsExactly("Mary", "John");
+        assertThat(repository.findByLastName("smith", mary.getId())).extracting(Person::getFirstName).containsExactly("John");
+        assertThat(repository.findByLastName("brown")).isEmpty();
+    }
+
+    @Test
+    public void shouldFindFirstByIdOfSameNames_whenUpdateCreatesDuplicate() {
+        repository.updateFirstName(john.getId(), "MARY");
+
+        assertThat(repository.findByName("smith", "mary").getId()).isEqualTo(mary.getId());
+        repository.delete(mary.getId());
+        assertThat(repository.findByName("smith", "mary").getId()).isEqualTo(john.getId());
+    }
+
+    @Test
+    public void shouldBumpVersion_whenUpdated_givenExpectedVersion() {
+        assertThat(repository.updateFirstName(mary.getId(), "Maria", 1L).getPerson().getVersion()).isEqualTo(2);
+
+        assertThat(catchThrowable(() -> repository.updateFirstName(mary.getId(), "Mary", 1L)))
+                .isInstanceOf(PersonVersionMismatchException.class);
+        assertThat(repository.findById(mary.getId()).getFirstName()).isEqualTo("Maria");
+        assertThat(repository.findById(mary.getId()).getVersion()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldReuseDeletedRows() {
+        assertThat(repository.delete(mary.getId()).getPerson().getFirstName()).isEqualTo("Mary");
+        assertThat(repository.delete(mary.getId())).isNull();
+        Person collin = new Person("Collin", "Brown");
+
+        assertThat(repository.add(collin)).isNull();
+        assertThat(repository.size()).isEqualTo(3);
+        assertThat(repository.findById(mary.getId())).isNull();
+        assertThat(repository.findById(collin.getId()).getFirstName()).isEqualTo("Collin");
+    }
+
+    @Test
+    public void shouldPageCommonLastNameInIdOrder_givenIdsOutOfOrderAndDeletes() {
+        CompactPersonRepository common = new CompactPersonRepository();
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 5000; id++)
+            ids.add(id);
+        Collections.shuffle(ids, new Random(7));
+        for (Long id : ids)
+            common.add(new Person(id, "First" + id, "Jones"));
+        for (Long id : ids.subList(0, 4000))
+            common.delete(id);
+        TreeSet<Long> expected = new TreeSet<>(ids.subList(4000, 5000));
+
+        assertThat(common.findByLastName("jones")).extracting(Person::getId).containsExactlyElementsOf(expected);
+        Long middle = new ArrayList<>(expected).get(500);
+        assertThat(common.findByLastName("jones", middle)).hasSize(499)
+                .extracting(Person::getId).containsExactlyElementsOf(expected.tailSet(middle, false));
+        assertThat(common.lastNameCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldBehaveLikeIndexedRepository_givenRandomOperations() {
+        InMemoryPersonRepository expected = new InMemoryPersonRepository();
+        CompactPersonRepository actual = new CompactPersonRepository();
+        Random random = new Random(42);
+        List<Long> ids = new ArrayList<>();
+
+        for (int i = 0; i < 20_000; i++) {
+            String lastName = "Last" + random.nextInt(20);
+            String firstName = "First" + random.nextInt(1000);
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    Person person = new Person(firstName, lastName);
+                    Person copy = new Person(person.getId(), firstName, lastName);
+                    Person expectedConflict = expected.add(person);
+                    Person actualConflict = actual.add(copy);
+                    assertThat(actualConflict == null).isEqualTo(expectedConflict == null);
+                    if (expectedConflict == null)
+                        ids.add(person.getId());
+                    break;
+                case 2:
+                    if (!ids.isEmpty()) {
+                        Long id = ids.get(random.nextInt(ids.size()));
+                        assertThat(actual.updateFirstName(id, firstName) == null)
+                                .isEqualTo(expected.updateFirstName(id, firstName) == null);
+                    }
+                    break;
+                default:
+                    if (!ids.isEmpty()) {
+                        Long id = ids.remove(random.nextInt(ids.size()));
+                        assertThat(actual.delete(id) == null).isEqualTo(expected.delete(id) == null);
+                    }
+            }
+            Person expectedFound = expected.findByName(lastName.toUpperCase(), firstName);
+            Person actualFound = actual.findByName(lastName.toUpperCase(), firstName);
+            assertThat(actualFound == null ? null : actualFound.getId())
+                    .isEqualTo(expectedFound == null ? null : expectedFound.getId());
+        }
+
+        assertThat(actual.size()).isEqualTo(expected.size());
+        for (int i = 0; i < 20; i++) {
+            assertThat(actual.findByLastName("last" + i)).extracting(Person::getId)
+                    .containsExactlyElementsOf(expected.findByLastName("last" + i).stream().map(Person::getId)::iterator);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.huntersix.spring.rest.Exception.PersonVersionMismatchException;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.model.PersonChange;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InMemoryPersonRepositoryTest {
+    private InMemoryPersonRepository repository;
+    private Person mary;
+    private Person john;
+    private Person brian;
+
+    @Before
+    public void setUp() {
+        repository = new InMemoryPersonRepository();
+        mary = new Person("Mary", "Smith");
+        john = new Person("John", "Smith");
+        brian = new Person("Brian", "Archer");
+        repository.add(mary);
+        repository.add(john);
+        repository.add(brian);
+    }
+
+    @Test
+    public void shouldFindPerson_givenNameIgnoringCase() {
+        assertThat(repository.findByName("SMITH", "mary")).isSameAs(mary);
+        assertThat(repository.findByName("smith", "brian")).isNull();
+    }
+
+    @Test
+    public void shouldFindPeopleOrderedById_givenLastName() {
+        assertThat(repository.findByLastName("smith")).containsExactly(mary, john);
+        assertThat(repository.findByLastName("brown")).isEmpty();
+    }
+
+    @Test
+    public void shouldRejectPerson_givenExistingId() {
+        Person copy = new Person("Other", "Person");
+        copy.setId(mary.getId());
+
+        assertThat(repository.add(copy)).isSameAs(mary);
+        assertThat(repository.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldRejectPerson_givenExistingNameIgnoringCase() {
+        Person duplicate = new Person("MARY", "smith");
+
+        assertThat(repository.add(duplicate)).isSameAs(mary);
+        assertThat(repository.findById(duplicate.getId())).isNull();
+    }
+
+    @Test
+    public void shouldAddOnlyOnePerson_whenSameNameAddedConcurrently() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Person>> results = new ArrayList<>();
+        for (int i = 0; i < threads * 100; i++) {
+            Person person = new Person("Collin", "Brown");
+            results.add(executor.submit(() -> {
+                start.await();
+                return repository.add(person);
+            }));
+        }
+        start.countDown();
+
+        int added = 0;
+        for (Future<Person> result : results) {
+            if (result.get() == null)
+                added++;
+        }
+        executor.shutdown();
+
+        assertThat(added).isEqualTo(1);
+        assertThat(repository.findByLastName("brown")).hasSize(1);
+    }
+
+    @Test
+    public void shouldReindexPerson_whenFirstNameUpdated() {
+        assertThat(repository.updateFirstName(mary.getId(), "Maria").getPreviousFirstName()).isEqualTo("Mary");
+
+        assertThat(repository.findByName("smith", "mary")).isNull();
+        assertThat(repository.findByName("smith", "maria")).isSameAs(mary);
+        assertThat(repository.updateFirstName(-1L, "Maria")).isNull();
+    }
+
+    @Test
+    public void shouldApplyOneOfConcurrentUpdates_givenSameExpectedVersion() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<PersonChange>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String firstName = "Mary" + i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    return repository.updateFirstName(mary.getId(), firstName, 1L);
+                } catch (PersonVersionMismatchException ex) {
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        int applied = 0;
+        for (Future<PersonChange> future : futures) {
+            if (future.get() != null)
+                applied++;
+        }
+        executor.shutdown();
+
+        assertThat(applied).isEqualTo(1);
+        assertThat(mary.getVersion()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldRemoveFromAllIndexes_whenDeleted() {
+        assertThat(repository.delete(brian.getId()).getPerson()).isSameAs(brian);
+        assertThat(repository.delete(brian.getId())).isNull();
+
+        assertThat(repository.findById(brian.getId())).isNull();
+        assertThat(repository.findByName("archer", "brian")).isNull();
+        assertThat(repository.findByLastName("archer")).isEmpty();
+    }
+}
@@ -0,0 +1,177 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.huntersix.spring.rest.Exception.PersonVersionMismatchException;
+import uk.co.huntersix.spring.rest.model.Person;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class JdbcPersonRepositoryTest {
+    private JdbcDataSource dataSource;
+    private JdbcPersonRepository repository;
+    private Person mary;
+    private Person john;
+
+    @Before
+    public void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        repository = new JdbcPersonRepository(dataSource);
+        mary = new Person("Mary", "Smith");
+        john = new Person("John", "Smith");
+        repository.add(mary);
+        repository.add(john);
+        repository.add(new Person("Brian", "Archer"));
+    }
+
+    @Test
+    public void shouldReturnCopies_givenNameIgnoringCase() {
+        Person found = repository.findByName("SMITH", "mary");
+
+        assertThat(found).isNotSameAs(mary);
+        assertThat(found.getId()).isEqualTo(mary.getId());
+        assertThat(found.getFirstName()).isEqualTo("Mary");
+        assertThat(found.getLastName()).isEqualTo("Smith");
+        assertThat(found.getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldPageLastNameInIdOrder() {
+        assertThat(repository.findByLastName("smith")).extracting(Person::getFirstName).containsExactly("Mary", "John");
+        assertThat(repository.findByLastName("smith", mary.getId())).extracting(Person::getFirstName).containsExactly("John");
+        assertThat(repository.findByLastName("smith")).hasSize(2);
+        assertThat(repository.findByLastName("brown")).isEmpty();
+        assertThat(repository.findAll()).hasSize(3);
+    }
+
+    @Test
+    public void shouldRejectPerson_givenExistingNameOrId() {
+        Person sameId = new Person(mary.getId(), "Other", "Person");
+
+        assertThat(repository.add(new Person("MARY", "smith")).getId()).isEqualTo(mary.getId());
+        assertThat(repository.add(sameId).getId()).isEqualTo(mary.getId());
+        assertThat(repository.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldAddBatch_reportingPeopleAlreadyStored() {
+        Person collin = new Person("Collin", "Brown");
+
+        List<Person> existing = repository.addAll(Arrays.asList(
+                collin, new Person("mary", "SMITH"), new Person("COLLIN", "brown")));
+
+        assertThat(existing.get(0)).isNull();
+        assertThat(existing.get(1).getId()).isEqualTo(mary.getId());
+        assertThat(existing.get(2).getId()).isEqualTo(collin.getId());
+        assertThat(repository.size()).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldReuseCounts_untilTheyExpire() {
+        JdbcPersonRepository cached = new JdbcPersonRepository(dataSource, Long.MAX_VALUE);
+        JdbcPersonRepository uncached = new JdbcPersonRepository(dataSource, 0);
+        assertThat(cached.size()).isEqualTo(3);
+
+        repository.add(new Person("Collin", "Brown"));
+
+        assertThat(cached.size()).isEqualTo(3);
+        assertThat(cached.lastNameCount()).isEqualTo(2);
+        assertThat(uncached.size()).isEqualTo(4);
+        assertThat(uncached.lastNameCount()).isEqualTo(3);
+        assertThat(cached.findAll()).hasSize(4);
+    }
+
+    @Test
+    public void shouldFindFirstByIdOfSameNames_whenUpdateCreatesDuplicate() {
+        repository.updateFirstName(john.getId(), "MARY");
+
+        assertThat(repository.findByName("smith", "mary").getId()).isEqualTo(mary.getId());
+        repository.delete(mary.getId());
+        assertThat(repository.findByName("smith", "mary").getId()).isEqualTo(john.getId());
+        assertThat(repository.fullNameCount()).isEqualTo(2);
+        assertThat(repository.lastNameCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldBumpVersion_whenUpdated_givenExpectedVersion() {
+        assertThat(repository.updateFirstName(mary.getId(), "Maria", 1L).getPerson().getVersion()).isEqualTo(2);
+
+        assertThat(catchThrowable(() -> repository.updateFirstName(mary.getId(), "Mary", 1L)))
+                .isInstanceOf(PersonVersionMismatchException.class);
+        assertThat(repository.findById(mary.getId()).getFirstName()).isEqualTo("Maria");
+        assertThat(repository.findById(mary.getId()).getVersion()).isEqualTo(2);
+        assertThat(repository.updateFirstName(-1L, "Nobody")).isNull();
+    }
+
+    @Test
+    public void shouldKeepPeople_whenReopened() {
+        repository.restore(new Person(Person.lastAssignedId() + 100, "Restored", "Person", 5));
+
+        JdbcPersonRepository reopened = new JdbcPersonRepository(dataSource);
+
+        assertThat(reopened.size()).isEqualTo(4);
+        assertThat(reopened.findByName("person", "restored").getVersion()).isEqualTo(5);
+        assertThat(new Person("New", "Person").getId()).isGreaterThan(reopened.findByName("person", "restored").getId());
+    }
+
+    @Test
+    public void shouldBehaveLikeIndexedRepository_givenRandomOperations() {
+        InMemoryPersonRepository expected = new InMemoryPersonRepository();
+        Random random = new Random(42);
+        List<Long> ids = new ArrayList<>();
+        for (Person person : repository.findAll())
+            expected.add(new Person(person.getId(), person.getFirstName(), person.getLastName()));
+        for (Person person : expected.findAll())
+            ids.add(person.getId());
+
+        for (int i = 0; i < 2_000; i++) {
+            String lastName = "Last" + random.nextInt(20);
+            String firstName = "First" + random.nextInt(100);
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    Person person = new Person(firstName, lastName);
+                    Person copy = new Person(person.getId(), firstName, lastName);
+                    Person expectedConflict = expected.add(person);
+                    Person actualConflict = repository.add(copy);
+                    assertThat(actualConflict == null).isEqualTo(expectedConflict == null);
+                    if (expectedConflict == null)
+                        ids.add(person.getId());
+                    break;
+                case 2:
+                    if (!ids.isEmpty()) {
+                        Long id = ids.get(random.nextInt(ids.size()));
+                        assertThat(repository.updateFirstName(id, firstName) == null)
+                                .isEqualTo(expected.updateFirstName(id, firstName) == null);
+                    }
+                    break;
+                default:
+                    if (!ids.isEmpty()) {
+                        Long id = ids.remove(random.nextInt(ids.size()));
+                        assertThat(repository.delete(id) == null).isEqualTo(expected.delete(id) == null);
+                    }
+            }
+            Person expectedFound = expected.findByName(lastName.toUpperCase(), firstName);
+            Person actualFound = repository.findByName(lastName.toUpperCase(), firstName);
+            assertThat(actualFound == null ? null : actualFound.getId())
+                    .isEqualTo(expectedFound == null ? null : expectedFound.getId());
+        }
+
+        assertThat(repository.size()).isEqualTo(expected.size());
+        assertThat(repository.lastNameCount()).isEqualTo(expected.lastNameCount());
+        assertThat(repository.fullNameCount()).isEqualTo(expected.fullNameCount());
+        for (int i = 0; i < 20; i++) {
+            assertThat(repository.findByLastName("last" + i)).extracting(Person::getId)
+                    .containsExactlyElementsOf(expected.findByLastName("last" + i).stream().map(Person::getId)::iterator);
+        }
+    }
+}
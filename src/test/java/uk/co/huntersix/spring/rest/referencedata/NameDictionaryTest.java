@@ -0,0 +1,57 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NameDictionaryTest {
+    private final NameDictionary names = new NameDictionary();
+
+    @Test
+    public void shouldShareKey_givenNamesDifferingInCase() {
+        int smith = names.intern("Smith");
+        int upper = names.intern("SMITH");
+
+        assertThat(names.intern("Smith")).isEqualTo(smith);
+        assertThat(upper).isNotEqualTo(smith);
+        assertThat(names.keyOf(upper)).isEqualTo(names.keyOf(smith));
+        assertThat(names.findKey("smith")).isEqualTo(names.keyOf(smith));
+        assertThat(names.findKey("jones")).isEqualTo(-1);
+    }
+
+    @Test
+    public void shouldFreeNameAndKey_whenLastUseReleased() {
+        int smith = names.intern("Smith");
+        names.intern("Smith");
+        int upper = names.intern("SMITH");
+
+        names.release(smith);
+        assertThat(names.name(smith)).isEqualTo("Smith");
+        names.release(smith);
+        assertThat(names.findKey("smith")).isEqualTo(names.keyOf(upper));
+        names.release(upper);
+        assertThat(names.findKey("smith")).isEqualTo(-1);
+        assertThat(names.keyCount()).isZero();
+        assertThat(names.intern("Jones")).isIn(smith, upper);
+    }
+
+    @Test
+    public void shouldKeepFindingNames_whileManyComeAndGo() {
+        for (int round = 0; round < 10; round++) {
+            int[] codes = new int[10_000];
+            for (int i = 0; i < codes.length; i++)
+                codes[i] = names.intern("Name" + round + "-" + i);
+            for (int i = 0; i < codes.length; i += 2)
+                names.release(codes[i]);
+            for (int i = 1; i < codes.length; i += 2)
+                assertThat(names.name(codes[i])).isEqualTo("Name" + round + "-" + i);
+            for (int i = 0; i < codes.length; i++)
+                assertThat(names.findKey("NAME" + round + "-" + i) >= 0).isEqualTo(i % 2 == 1);
+            for (int i = 1; i < codes.length; i += 2)
+                names.release(codes[i]);
+        }
+
+        assertThat(names.keyCount()).isZero();
+        assertThat(names.findKey("name0-1")).isEqualTo(-1);
+    }
+}
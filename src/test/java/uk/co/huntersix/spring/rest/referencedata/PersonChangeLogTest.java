@@ -0,0 +1,66 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import org.junit.Test;
+import uk.co.huntersix.spring.rest.Exception.ChangesExpiredException;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.model.PersonChange;
+import uk.co.huntersix.spring.rest.model.PersonChangeEvent;
+import uk.co.huntersix.spring.rest.model.PersonChangePage;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class PersonChangeLogTest {
+    private final PersonChangeLog changeLog = new PersonChangeLog(3);
+
+    @Test
+    public void shouldNumberChangesInOrder_givenPublishedChanges() throws InterruptedException {
+        Person mary = new Person(1L, "Mary", "Smith");
+        changeLog.personChanged(new PersonChange(PersonChange.Type.ADDED, mary, null));
+        mary.setFirstName("Maria");
+        mary.setVersion(2);
+        changeLog.personChanged(new PersonChange(PersonChange.Type.UPDATED, mary, "Mary"));
+
+        PersonChangePage page = changeLog.read(0, 10, 0);
+
+        assertThat(page.getLog()).isEqualTo(changeLog.id());
+        assertThat(page.getHead()).isEqualTo(2);
+        assertThat(page.getChanges()).extracting(PersonChangeEvent::getSequence, PersonChangeEvent::getType,
+                PersonChangeEvent::getFirstName, PersonChangeEvent::getVersion)
+                .containsExactly(tuple(1L, PersonChange.Type.ADDED, "Mary", 1L),
+                        tuple(2L, PersonChange.Type.UPDATED, "Maria", 2L));
+        assertThat(changeLog.read(0, 1, 0).getChanges()).hasSize(1);
+        assertThat(changeLog.read(2, 10, 0).getChanges()).isEmpty();
+    }
+
+    @Test
+    public void shouldWaitForNextChange_givenLatestSequence() throws Exception {
+        CompletableFuture<PersonChangePage> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return changeLog.read(0, 10, 10_000);
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        Thread.sleep(50);
+        assertThat(waiting).isNotDone();
+
+        changeLog.personChanged(new PersonChange(PersonChange.Type.DELETED, new Person(1L, "Mary", "Smith"), null));
+
+        assertThat(waiting.get().getChanges()).extracting(PersonChangeEvent::getType)
+                .containsExactly(PersonChange.Type.DELETED);
+    }
+
+    @Test
+    public void shouldExpireChanges_whenNoLongerKept() {
+        for (long id = 1; id <= 5; id++)
+            changeLog.personChanged(new PersonChange(PersonChange.Type.ADDED, new Person(id, "Name", "Smith"), null));
+
+        assertThat(catchThrowable(() -> changeLog.read(1, 10, 0))).isInstanceOf(ChangesExpiredException.class);
+        assertThat(catchThrowable(() -> changeLog.read(6, 10, 0))).isInstanceOf(ChangesExpiredException.class);
+        assertThat(catchThrowable(() -> changeLog.read(2, 10, 0))).isNull();
+    }
+}
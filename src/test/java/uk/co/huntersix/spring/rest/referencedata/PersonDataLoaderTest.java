@@ -0,0 +1,125 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import uk.co.huntersix.spring.rest.model.Person;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class PersonDataLoaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldLoadCsvInParallelChunks_givenFileLargerThanChunk() throws IOException {
+        File file = folder.newFile("people.csv");
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            writer.println("id,firstName,lastName");
+            for (int i = 1; i <= 10_000; i++) {
+                writer.println((1_000_000 + i) + ",First" + i + ",Last" + (i % 100));
+            }
+        }
+        InMemoryPersonRepository repository = new InMemoryPersonRepository();
+
+        long loaded = new PersonDataLoader(new FileSystemResource(file), 4, new ObjectMapper(), 4096).load(repository);
+
+        assertThat(loaded).isEqualTo(10_000);
+        assertThat(repository.findByLastName("last7")).hasSize(100);
+        assertThat(repository.findByName("last1", "first9901").getId()).isEqualTo(1_009_901L);
+        assertThat(new Person("Next", "Person").getId()).isGreaterThan(1_010_000L);
+    }
+
+    @Test
+    public void shouldLoadNdjsonAndSkipDuplicates() throws IOException {
+        File file = folder.newFile("people.ndjson");
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            writer.println("{\"firstName\":\"Mary\",\"lastName\":\"Smith\"}");
+            writer.println();
+            writer.println("{\"firstName\":\"MARY\",\"lastName\":\"smith\"}");
+            writer.print("{\"firstName\":\"Brian\",\"lastName\":\"Archer\"}");
+        }
+        InMemoryPersonRepository repository = new InMemoryPersonRepository();
+
+        long loaded = new PersonDataLoader(new FileSystemResource(file), 2, new ObjectMapper(), 16).load(repository);
+
+        assertThat(loaded).isEqualTo(2);
+        assertThat(repository.findByName("archer", "brian")).isNotNull();
+    }
+
+    @Test
+    public void shouldReportMalformedLine_givenNonNumericId() throws IOException {
+        File file = folder.newFile("bad-id.csv");
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            writer.println("7,Mary,Smith");
+            writer.println("abc,Brian,Archer");
+        }
+
+        Throwable thrown = catchThrowable(() ->
+            new PersonDataLoader(new FileSystemResource(file), 1, new ObjectMapper()).load(new InMemoryPersonRepository()));
+
+        assertThat(thrown).isInstanceOf(IOException.class)
+            .hasMessageContaining("Malformed person line")
+            .hasMessageEndingWith("abc,Brian,Archer");
+    }
+
+    @Test
+    public void shouldKeepFileIds_andAssignOthersOnInsert() throws IOException {
+        File file = folder.newFile("mixed.csv");
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            writer.println("7,Mary,Smith");
+            writer.println(",MARY,smith");
+            writer.println("Brian,Archer");
+        }
+        InMemoryPersonRepository repository = new InMemoryPersonRepository();
+
+        long loaded = new PersonDataLoader(new FileSystemResource(file), 1, new ObjectMapper()).load(repository);
+
+        assertThat(loaded).isEqualTo(2);
+        assertThat(repository.findByName("smith", "mary").getId()).isEqualTo(7L);
+        assertThat(repository.findByName("archer", "brian").getId()).isNotNull().isNotEqualTo(7L);
+    }
+
+    @Test
+    public void shouldDrawNoIdForDuplicates_givenJdbcStore() throws IOException {
+        File file = folder.newFile("duplicates.csv");
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            writer.println("Mary,Smith");
+            writer.println("MARY,smith");
+            writer.println("Brian,Archer");
+            writer.println("brian,ARCHER");
+        }
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        JdbcPersonRepository repository = new JdbcPersonRepository(dataSource);
+        repository.add(new Person(null, "Brian", "Archer"));
+        long before = Person.lastAssignedId();
+
+        long loaded = new PersonDataLoader(new FileSystemResource(file), 1, new ObjectMapper()).load(repository);
+
+        assertThat(loaded).isEqualTo(1);
+        assertThat(Person.lastAssignedId()).isEqualTo(before + 1);
+        assertThat(repository.findByName("smith", "mary").getId()).isEqualTo(before + 1);
+    }
+
+    @Test
+    public void shouldStreamClasspathResource() throws IOException {
+        InMemoryPersonRepository repository = new InMemoryPersonRepository();
+
+        new PersonDataLoader(new ClassPathResource("people.csv"), 0, new ObjectMapper()).load(repository);
+
+        assertThat(repository.findById(1L).getLastName()).isEqualTo("Smith");
+        assertThat(repository.size()).isEqualTo(3);
+    }
+}
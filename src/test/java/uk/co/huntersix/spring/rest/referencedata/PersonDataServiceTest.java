@@ -0,0 +1,212 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.huntersix.spring.rest.Exception.PersonAlreadyExistException;
+import uk.co.huntersix.spring.rest.Exception.PersonNotFoundException;
+import uk.co.huntersix.spring.rest.model.BatchPatchRequest;
+import uk.co.huntersix.spring.rest.model.BatchResult;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.model.PersonChange;
+import uk.co.huntersix.spring.rest.model.PersonChangeEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class PersonDataServiceTest {
+    private PersonDataService service;
+    private Person mary;
+    private List<PersonChange> changes;
+
+    @Before
+    public void setUp() {
+        mary = new Person("Mary", "Smith");
+        changes = new ArrayList<>();
+        service = new PersonDataService(new InMemoryPersonRepository(Arrays.asList(mary, new Person("Brian", "Archer"))),
+                Collections.singletonList(changes::add), new SimpleMeterRegistry());
+    }
+
+    @Test
+    public void shouldLookupPersonWithoutThrowing() {
+        assertThat(service.lookupPerson("smith", "mary")).contains(mary);
+        assertThat(service.lookupPerson("smith", "john")).isEmpty();
+        assertThat(service.lookupPeople("brown")).isEmpty();
+        assertThat(service.isPersonExist("SMITH", "MARY")).isTrue();
+        assertThat(service.isPersonExist("brown")).isFalse();
+    }
+
+    @Test
+    public void shouldThrowNotFoundWithoutStackTrace_givenUnknownName() {
+        Throwable thrown = catchThrowable(() -> service.findPerson("smith", "john"));
+
+        assertThat(thrown).isInstanceOf(PersonNotFoundException.class);
+        assertThat(thrown.getStackTrace()).isEmpty();
+    }
+
+    @Test
+    public void shouldApplyReplicatedChangesOnce_givenVersions() {
+        service.replicate(Arrays.asList(
+                new PersonChangeEvent(1, 0, PersonChange.Type.ADDED, 900L, "John", "Smith", 1),
+                new PersonChangeEvent(2, 0, PersonChange.Type.UPDATED, mary.getId(), "Maria", "Smith", 2),
+                new PersonChangeEvent(3, 0, PersonChange.Type.UPDATED, mary.getId(), "Mary", "Smith", 2),
+                new PersonChangeEvent(4, 0, PersonChange.Type.UPDATED, 900L, "Jon", "Smith", 5)).iterator());
+
+        assertThat(service.findPerson("smith", "maria").getVersion()).isEqualTo(2);
+        assertThat(service.lookupPerson("smith", "mary")).isEmpty();
+        assertThat(service.findPerson("smith", "jon").getVersion()).isEqualTo(5);
+        assertThat(changes).extracting(PersonChange::getType, PersonChange::getPreviousFirstName).containsExactly(
+                tuple(PersonChange.Type.ADDED, null),
+                tuple(PersonChange.Type.UPDATED, "Mary"),
+                tuple(PersonChange.Type.UPDATED, "John"));
+    }
+
+    @Test
+    public void shouldHoldOnlySnapshotPeople_givenSnapshot() {
+        long count = service.replicateSnapshot(Arrays.asList(
+                new PersonChangeEvent(7, 0, PersonChange.Type.ADDED, mary.getId(), "Mary", "Smith", 1),
+                new PersonChangeEvent(7, 0, PersonChange.Type.ADDED, 901L, "Collin", "Brown", 3)).iterator(), false);
+
+        assertThat(count).isEqualTo(2);
+        assertThat(service.isPersonExist("archer")).isFalse();
+        assertThat(service.findPerson("brown", "collin").getVersion()).isEqualTo(3);
+        assertThat(service.findPerson("smith", "mary")).isSameAs(mary);
+    }
+
+    @Test
+    public void shouldReplaceEveryone_givenSnapshotOfNewLog() {
+        service.updatePerson(mary.getId(), "Maria");
+        changes.clear();
+
+        service.replicateSnapshot(Collections.singletonList(
+                new PersonChangeEvent(1, 0, PersonChange.Type.ADDED, mary.getId(), "Mary", "Jones", 1)).iterator(),
+                true);
+
+        assertThat(service.findPerson("jones", "mary").getVersion()).isEqualTo(1);
+        assertThat(service.isPersonExist("smith")).isFalse();
+        assertThat(changes).extracting(PersonChange::getType, change -> change.getPerson().getLastName())
+                .containsExactly(tuple(PersonChange.Type.DELETED, "Smith"),
+                        tuple(PersonChange.Type.ADDED, "Jones"),
+                        tuple(PersonChange.Type.DELETED, "Archer"));
+    }
+
+    @Test
+    public void shouldAssignIdOnlyOnInsert_givenPeopleWithoutIds() {
+        Person duplicate = new Person(null, "mary", "smith");
+        Person john = new Person(null, "John", "Smith");
+        long lastId = Person.lastAssignedId();
+
+        assertThat(catchThrowable(() -> service.addPerson(duplicate))).isInstanceOf(PersonAlreadyExistException.class);
+        assertThat(duplicate.getId()).isNull();
+        assertThat(Person.lastAssignedId()).isEqualTo(lastId);
+        assertThat(service.addPerson(john).getId()).isEqualTo(lastId + 1);
+    }
+
+    @Test
+    public void shouldThrowAlreadyExistWithoutStackTrace_givenDuplicateName() {
+        Throwable thrown = catchThrowable(() -> service.addPerson(new Person("mary", "smith")));
+
+        assertThat(thrown).isInstanceOf(PersonAlreadyExistException.class)
+                .hasMessage("Person with given firstName and lastName is already exist");
+        assertThat(thrown.getStackTrace()).isEmpty();
+    }
+
+    @Test
+    public void shouldReportStatusPerItem_givenBatches() {
+        Person mary2 = new Person("MARY", "smith");
+        Person collin = new Person("Collin", "Brown");
+        BatchPatchRequest patch = new BatchPatchRequest();
+        patch.setId(mary.getId());
+        patch.setFirstName("Maria");
+        BatchPatchRequest missing = new BatchPatchRequest();
+        missing.setId(-1L);
+
+        assertThat(service.addPeople(Arrays.asList(collin, mary2).iterator()))
+                .extracting(BatchResult::getStatus, BatchResult::getId)
+                .containsExactly(tuple(BatchResult.Status.CREATED, collin.getId()),
+                        tuple(BatchResult.Status.CONFLICT, mary.getId()));
+        assertThat(service.updatePeople(Arrays.asList(patch, missing).iterator()))
+                .extracting(BatchResult::getStatus)
+                .containsExactly(BatchResult.Status.UPDATED, BatchResult.Status.NOT_FOUND);
+        assertThat(service.deletePeople(Arrays.asList(collin.getId(), collin.getId()).iterator()))
+                .extracting(BatchResult::getStatus)
+                .containsExactly(BatchResult.Status.DELETED, BatchResult.Status.NOT_FOUND);
+        assertThat(service.findPerson("smith", "maria")).isSameAs(mary);
+    }
+
+    @Test
+    public void shouldPublishOnlyAppliedChanges() {
+        Person collin = service.addPerson(new Person("Collin", "Brown"));
+        service.updatePerson(mary.getId(), "Maria");
+        service.deletePerson(collin.getId());
+        catchThrowable(() -> service.deletePerson(collin.getId()));
+        catchThrowable(() -> service.addPerson(new Person("Brian", "Archer")));
+
+        assertThat(changes).extracting(PersonChange::getType, change -> change.getPerson().getId(),
+                PersonChange::getPreviousFirstName)
+                .containsExactly(tuple(PersonChange.Type.ADDED, collin.getId(), null),
+                        tuple(PersonChange.Type.UPDATED, mary.getId(), "Mary"),
+                        tuple(PersonChange.Type.DELETED, collin.getId(), null));
+    }
+
+    @Test
+    public void shouldNotApplyRefusedChange_andWaitForBatchItemsAppliedBeforeIt() {
+        List<String> calls = new ArrayList<>();
+        InMemoryPersonRepository repository = new InMemoryPersonRepository();
+        PersonDataService refusing = new PersonDataService(repository, Collections.singletonList(
+                new PersonChangeListener() {
+                    @Override
+                    public void beforeChange() {
+                        if (calls.contains("changed"))
+                            throw new IllegalStateException("Log is broken");
+                    }
+
+                    @Override
+                    public void personChanged(PersonChange change) {
+                        calls.add("changed");
+                    }
+
+                    @Override
+                    public void changesPublished() {
+                        calls.add("published");
+                    }
+                }), new SimpleMeterRegistry());
+
+        Throwable thrown = catchThrowable(() -> refusing.addPeople(Arrays.asList(
+                new Person("Collin", "Brown"), new Person("Brian", "Archer")).iterator()));
+
+        assertThat(thrown).isInstanceOf(IllegalStateException.class);
+        assertThat(calls).containsExactly("changed", "published");
+        assertThat(repository.size()).isEqualTo(1);
+        assertThat(repository.findByName("archer", "brian")).isNull();
+    }
+
+    @Test
+    public void shouldTimeCallsAndCountFailuresByStatus() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        InMemoryPersonRepository repository = new InMemoryPersonRepository(Arrays.asList(new Person("Mary", "Smith")));
+        PersonDataService metered = new PersonDataService(repository, Collections.emptyList(), registry);
+
+        metered.findPerson("smith", "mary");
+        catchThrowable(() -> metered.findPerson("smith", "john"));
+        catchThrowable(() -> metered.addPerson(new Person("mary", "SMITH")));
+        metered.isPersonExist("smith");
+
+        assertThat(registry.get("person.service").tags("method", "findPerson", "exception", "None").timer().count())
+                .isEqualTo(1);
+        assertThat(registry.get("person.service").tags("method", "findPerson", "exception", "PersonNotFoundException")
+                .timer().count()).isEqualTo(1);
+        assertThat(registry.get("person.service").tags("method", "isPersonExistByLastName").timer().count())
+                .isEqualTo(1);
+        assertThat(registry.get("person.errors").tag("status", "404").counter().count()).isEqualTo(1);
+        assertThat(registry.get("person.errors").tag("status", "409").counter().count()).isEqualTo(1);
+        assertThat(registry.get("person.records").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("person.index.keys").tag("index", "lastName").gauge().value()).isEqualTo(1);
+    }}
@@ -0,0 +1,70 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.huntersix.spring.rest.model.NameMatch;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.model.PersonChange;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class PersonNameIndexTest {
+    private PersonNameIndex index;
+
+    @Before
+    public void setUp() {
+        index = new PersonNameIndex(new InMemoryPersonRepository(Arrays.asList(
+                new Person("Mary", "Smith"), new Person("John", "Smith"), new Person("Brian", "Smithers"),
+                new Person("Anna", "Smyth"), new Person("Collin", "Brown"), new Person("Ian", "Schmidt"))));
+    }
+
+    @Test
+    public void shouldFindByPrefixIgnoringCase_inAlphabeticalOrder() {
+        assertThat(index.findByPrefix("SMI", 10)).extracting(NameMatch::getLastName, NameMatch::getCount)
+                .containsExactly(tuple("Smith", 2), tuple("Smithers", 1));
+        assertThat(index.findByPrefix("s", 2)).extracting(NameMatch::getLastName)
+                .containsExactly("Schmidt", "Smith");
+        assertThat(index.findByPrefix("x", 10)).isEmpty();
+    }
+
+    @Test
+    public void shouldFindSimilarClosestFirst() {
+        assertThat(index.findSimilar("smiht", 2, 10)).extracting(NameMatch::getLastName, NameMatch::getDistance)
+                .containsExactly(tuple("Smith", 2));
+        assertThat(index.findSimilar("Smyth", 1, 10)).extracting(NameMatch::getLastName, NameMatch::getDistance)
+                .containsExactly(tuple("Smyth", 0), tuple("Smith", 1));
+        assertThat(index.findSimilar("browne", 0, 10)).isEmpty();
+    }
+
+    @Test
+    public void shouldFollowAddsAndDeletes() {
+        Person kate = new Person("Kate", "Smithson");
+        index.personChanged(new PersonChange(PersonChange.Type.ADDED, kate, null));
+        assertThat(index.findByPrefix("smiths", 10)).extracting(NameMatch::getLastName).containsExactly("Smithson");
+
+        index.personChanged(new PersonChange(PersonChange.Type.DELETED, kate, null));
+        index.personChanged(new PersonChange(PersonChange.Type.DELETED, new Person("Anna", "Smyth"), null));
+        assertThat(index.findByPrefix("smiths", 10)).isEmpty();
+        assertThat(index.findSimilar("smyth", 1, 10)).extracting(NameMatch::getLastName).containsExactly("Smith");
+    }
+
+    @Test
+    public void shouldMatchBruteForceDistance_givenManyNames() {
+        InMemoryPersonRepository repository = new InMemoryPersonRepository();
+        String[] syllables = {"an", "ber", "son", "mi", "th", "ly", "ka", "ro"};
+        for (int i = 0; i < 4096; i++) {
+            String lastName = syllables[i & 7] + syllables[(i >> 3) & 7] + syllables[(i >> 6) & 7] + syllables[i >> 9];
+            repository.add(new Person("First", lastName));
+        }
+        PersonNameIndex large = new PersonNameIndex(repository);
+
+        for (String query : Arrays.asList("anbersonmi", "kathlymi", "robertson", "ly")) {
+            long expected = repository.findAll().stream().map(Person::getLastName).distinct()
+                    .filter(name -> PersonNameIndex.distance(query, name, 2) <= 2).count();
+            assertThat(large.findSimilar(query, 2, 10_000)).hasSize((int) expected);
+        }
+    }
+}
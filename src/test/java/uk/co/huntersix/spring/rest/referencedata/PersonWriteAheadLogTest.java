@@ -0,0 +1,134 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.co.huntersix.spring.rest.model.Person;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class PersonWriteAheadLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldRecoverChanges_afterRestart() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        PersonWriteAheadLog log = new PersonWriteAheadLog(directory, true, 0);
+        assertThat(log.recover(new InMemoryPersonRepository())).isFalse();
+        PersonDataService service = new PersonDataService(new InMemoryPersonRepository(), Collections.singletonList(log),
+                new SimpleMeterRegistry());
+        Person mary = service.addPerson(new Person("Mary", "Smith"));
+        Person john = service.addPerson(new Person("John", "Smith"));
+        Person brian = service.addPerson(new Person("Brian", "Archer"));
+        service.updatePerson(john.getId(), "MARY");
+        service.deletePerson(brian.getId());
+        log.close();
+
+        InMemoryPersonRepository recovered = new InMemoryPersonRepository();
+        PersonWriteAheadLog reopened = new PersonWriteAheadLog(directory, true, 0);
+        assertThat(reopened.recover(recovered)).isTrue();
+        reopened.close();
+
+        assertThat(recovered.size()).isEqualTo(2);
+        assertThat(recovered.findById(brian.getId())).isNull();
+        assertThat(recovered.findById(john.getId()).getFirstName()).isEqualTo("MARY");
+        assertThat(recovered.findById(john.getId()).getVersion()).isEqualTo(2);
+        assertThat(recovered.findByName("smith", "mary").getId()).isEqualTo(mary.getId());
+        assertThat(new Person("Next", "Person").getId()).isGreaterThan(brian.getId());
+    }
+
+    @Test
+    public void shouldRecoverFromSnapshotAndLaterSegment_andDropReplacedFiles() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        PersonWriteAheadLog log = new PersonWriteAheadLog(directory, false, 0);
+        CompactPersonRepository repository = new CompactPersonRepository();
+        log.recover(repository);
+        PersonDataService service = new PersonDataService(repository, Collections.singletonList(log),
+                new SimpleMeterRegistry());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Person>> added = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Person person = new Person("First" + i, "Last" + (i % 10));
+            added.add(executor.submit(() -> service.addPerson(person)));
+        }
+        for (Future<Person> future : added) {
+            future.get();
+        }
+        log.snapshot();
+        service.updatePerson(added.get(0).get().getId(), "Updated");
+        service.deletePerson(added.get(1).get().getId());
+        executor.shutdown();
+        log.close();
+
+        CompactPersonRepository recovered = new CompactPersonRepository();
+        PersonWriteAheadLog reopened = new PersonWriteAheadLog(directory, false, 0);
+        reopened.recover(recovered);
+        reopened.close();
+
+        assertThat(recovered.size()).isEqualTo(999);
+        assertThat(recovered.findById(added.get(0).get().getId()).getFirstName()).isEqualTo("Updated");
+        assertThat(recovered.findById(added.get(1).get().getId())).isNull();
+        assertThat(directory.resolve("snapshot-1.bin")).exists();
+        assertThat(directory.resolve("wal-0.log")).doesNotExist();
+    }
+
+    @Test
+    public void shouldCutTornRecord_givenCrashDuringWrite() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        PersonWriteAheadLog log = new PersonWriteAheadLog(directory, true, 0);
+        log.recover(new InMemoryPersonRepository());
+        PersonDataService service = new PersonDataService(new InMemoryPersonRepository(), Collections.singletonList(log),
+                new SimpleMeterRegistry());
+        Person mary = service.addPerson(new Person("Mary", "Smith"));
+        service.addPerson(new Person("Brian", "Archer"));
+        log.close();
+        Path segment = directory.resolve("wal-0.log");
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        InMemoryPersonRepository recovered = new InMemoryPersonRepository();
+        PersonWriteAheadLog reopened = new PersonWriteAheadLog(directory, true, 0);
+        reopened.recover(recovered);
+        reopened.close();
+
+        assertThat(recovered.size()).isEqualTo(1);
+        assertThat(recovered.findById(mary.getId())).isNotNull();
+        assertThat(Files.size(segment)).isLessThan(size - 3);
+    }
+
+    @Test
+    public void shouldRefuseChangesAndSnapshots_afterClose() throws IOException {
+        PersonWriteAheadLog log = new PersonWriteAheadLog(folder.getRoot().toPath(), true, 0);
+        InMemoryPersonRepository repository = new InMemoryPersonRepository();
+        log.recover(new InMemoryPersonRepository());
+        PersonDataService service = new PersonDataService(repository, Collections.singletonList(log),
+                new SimpleMeterRegistry());
+        Person mary = service.addPerson(new Person("Mary", "Smith"));
+        log.close();
+
+        assertThat(catchThrowable(() -> service.addPerson(new Person("Brian", "Archer"))))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(catchThrowable(() -> service.updatePerson(mary.getId(), "MARY")))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(catchThrowable(log::snapshot)).isInstanceOf(IOException.class);
+        assertThat(repository.size()).isEqualTo(1);
+        assertThat(repository.findById(mary.getId()).getFirstName()).isEqualTo("Mary");
+    }
+}
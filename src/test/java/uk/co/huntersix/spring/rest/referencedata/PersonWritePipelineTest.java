@@ -0,0 +1,121 @@
+package uk.co.huntersix.spring.rest.referencedata;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.co.huntersix.spring.rest.Exception.PersonAlreadyExistException;
+import uk.co.huntersix.spring.rest.Exception.TooManyRequestsException;
+import uk.co.huntersix.spring.rest.model.BatchResult;
+import uk.co.huntersix.spring.rest.model.Person;
+import uk.co.huntersix.spring.rest.model.PersonChange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class PersonWritePipelineTest {
+    private final AtomicInteger published = new AtomicInteger();
+    //Holds the writer thread in its first group commit until released
+    private final CountDownLatch committing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private PersonDataService service;
+    private PersonWritePipeline pipeline;
+
+    @Before
+    public void setUp() {
+        PersonChangeListener listener = new PersonChangeListener() {
+            @Override
+            public void personChanged(PersonChange change) {
+            }
+
+            @Override
+            public void changesPublished() {
+                if (published.incrementAndGet() == 1) {
+                    committing.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        service = new PersonDataService(new InMemoryPersonRepository(Collections.singletonList(
+                new Person("Mary", "Smith"))), Collections.singletonList(listener), new SimpleMeterRegistry());
+        pipeline = new PersonWritePipeline(service, 3, 100, new SimpleMeterRegistry());
+        pipeline.start();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        pipeline.close();
+    }
+
+    @Test
+    public void shouldApplyQueuedWritesAsOneBatch_whileCommitting() throws Exception {
+        CompletableFuture<Person> first = service.addPersonAsync(new Person("John", "Smith"));
+        assertThat(committing.await(10, TimeUnit.SECONDS)).isTrue();
+
+        List<CompletableFuture<Person>> queued = new ArrayList<>();
+        for (String firstName : Arrays.asList("Anna", "Bill", "Cleo"))
+            queued.add(service.addPersonAsync(new Person(firstName, "Smith")));
+        assertThat(queued).noneMatch(CompletableFuture::isDone);
+        release.countDown();
+
+        assertThat(first.get(10, TimeUnit.SECONDS).getFirstName()).isEqualTo("John");
+        for (CompletableFuture<Person> added : queued)
+            assertThat(added.get(10, TimeUnit.SECONDS).getId()).isNotNull();
+        assertThat(published.get()).isEqualTo(2);
+        assertThat(service.lookupPeople("smith")).hasSize(5);
+    }
+
+    @Test
+    public void shouldRefuseWrites_whenQueueIsFull() throws Exception {
+        service.addPersonAsync(new Person("John", "Smith"));
+        assertThat(committing.await(10, TimeUnit.SECONDS)).isTrue();
+        for (String firstName : Arrays.asList("Anna", "Bill", "Cleo"))
+            service.addPersonAsync(new Person(firstName, "Smith"));
+
+        Throwable thrown = catchThrowable(() -> service.addPersonAsync(new Person("Dave", "Smith")));
+
+        assertThat(thrown).isInstanceOf(TooManyRequestsException.class);
+        assertThat(service.lookupPerson("smith", "dave")).isEmpty();
+    }
+
+    @Test
+    public void shouldReportEachWritesOutcome_givenFailingWrites() {
+        release.countDown();
+
+        Throwable thrown = catchThrowable(() -> service.addPerson(new Person("Mary", "Smith")));
+        List<BatchResult> results = service.addPeople(Arrays.asList(
+                new Person("Mary", "Smith"), new Person("John", "Smith")).iterator());
+
+        assertThat(thrown).isInstanceOf(PersonAlreadyExistException.class);
+        assertThat(results).extracting(BatchResult::getStatus)
+                .containsExactly(BatchResult.Status.CONFLICT, BatchResult.Status.CREATED);
+    }
+
+    @Test
+    public void shouldApplyQueuedWrites_whenClosed() throws Exception {
+        service.addPersonAsync(new Person("John", "Smith"));
+        assertThat(committing.await(10, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Person> queued = service.addPersonAsync(new Person("Anna", "Smith"));
+
+        release.countDown();
+        pipeline.close();
+
+        assertThat(queued.isDone()).isTrue();
+        assertThat(service.addPerson(new Person("Bill", "Smith")).getId()).isNotNull();
+        assertThat(service.lookupPeople("smith")).hasSize(4);
+    }
+}